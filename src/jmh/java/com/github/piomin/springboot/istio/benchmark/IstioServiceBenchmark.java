@@ -0,0 +1,122 @@
+package com.github.piomin.springboot.istio.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.annotation.Fault;
+import com.github.piomin.springboot.istio.annotation.FaultType;
+import com.github.piomin.springboot.istio.annotation.Match;
+import com.github.piomin.springboot.istio.annotation.MatchMode;
+import com.github.piomin.springboot.istio.annotation.MatchType;
+import com.github.piomin.springboot.istio.config.IstioProperties;
+import com.github.piomin.springboot.istio.service.IstioService;
+import io.fabric8.istio.api.api.networking.v1alpha3.HTTPFaultInjection;
+import io.fabric8.istio.api.api.networking.v1alpha3.HTTPRetry;
+import io.fabric8.istio.api.api.networking.v1alpha3.HTTPRoute;
+import io.fabric8.istio.api.api.networking.v1alpha3.TrafficPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Measures the builders of Istio specs for a growing number of property-driven matches.
+ * Run with {@code mvn -Pbenchmark verify}, the {@code gc} profiler reports allocations per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IstioServiceBenchmark {
+
+    private static final MatchType[] TYPES = {MatchType.URI, MatchType.HEADERS, MatchType.METHOD, MatchType.QUERY_PARAMS};
+    private static final MatchMode[] MODES = {MatchMode.PREFIX, MatchMode.EXACT, MatchMode.REGEX};
+
+    @Param({"1", "10", "100", "1000", "5000"})
+    private int matches;
+
+    private IstioService istioService;
+    private EnableIstio enableIstio;
+    private EnableIstio delayFault;
+    private Match[] resolvedMatches;
+
+    @EnableIstio(version = "v1", timeout = 3000, numberOfRetries = 3, circuitBreakerErrors = 5,
+            fault = @Fault(type = FaultType.ABORT, percentage = 10, httpStatus = 503))
+    static class AbortFaultApp { }
+
+    @EnableIstio(version = "v1", timeout = 3000, numberOfRetries = 3,
+            fault = @Fault(type = FaultType.DELAY, percentage = 10, delay = 2000))
+    static class DelayFaultApp { }
+
+    @Setup
+    public void setup() {
+        IstioProperties properties = new IstioProperties();
+        List<IstioProperties.MatchProperties> matchProperties = new ArrayList<>(matches);
+        for (int i = 0; i < matches; i++) {
+            IstioProperties.MatchProperties match = new IstioProperties.MatchProperties();
+            match.setType(TYPES[i % TYPES.length]);
+            match.setMode(MODES[i % MODES.length]);
+            match.setKey("x-key-" + i);
+            match.setValue("/api/v1/resource-" + i);
+            matchProperties.add(match);
+        }
+        properties.setMatches(matchProperties);
+        istioService = new IstioService();
+        ReflectionTestUtils.setField(istioService, "applicationName", Optional.of("callme-service"));
+        ReflectionTestUtils.setField(istioService, "properties", properties);
+        enableIstio = AbortFaultApp.class.getAnnotation(EnableIstio.class);
+        delayFault = DelayFaultApp.class.getAnnotation(EnableIstio.class);
+        resolvedMatches = istioService.getMatches(enableIstio);
+    }
+
+    @Benchmark
+    public HTTPRoute buildRoute() {
+        return istioService.buildRoute(enableIstio);
+    }
+
+    @Benchmark
+    public void buildHTTPMatchRequest(Blackhole blackhole) {
+        for (Match match : resolvedMatches)
+            blackhole.consume(istioService.buildHTTPMatchRequest(match));
+    }
+
+    @Benchmark
+    public Match[] getMatches() {
+        return istioService.getMatches(enableIstio);
+    }
+
+    @Benchmark
+    public HTTPFaultInjection buildAbortFault() {
+        return istioService.buildFault(enableIstio);
+    }
+
+    @Benchmark
+    public HTTPFaultInjection buildDelayFault() {
+        return istioService.buildFault(delayFault);
+    }
+
+    @Benchmark
+    public HTTPRetry buildRetry() {
+        return istioService.buildRetry(enableIstio);
+    }
+
+    @Benchmark
+    public TrafficPolicy buildCircuitBreaker() {
+        return istioService.buildCircuitBreaker(enableIstio);
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.github.piomin.springboot.istio.actuate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.processor.ApplicationStartupListener;
+import com.github.piomin.springboot.istio.processor.EnableIstioAnnotationProcessor;
+import com.github.piomin.springboot.istio.service.IstioConfig;
+import com.github.piomin.springboot.istio.service.IstioService;
+import io.fabric8.istio.api.api.networking.v1alpha3.HTTPRetry;
+import io.fabric8.istio.api.networking.v1beta1.DestinationRule;
+import io.fabric8.istio.api.networking.v1beta1.Gateway;
+import io.fabric8.istio.api.networking.v1beta1.VirtualService;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+/**
+ * Exposes the configuration resolved from {@code @EnableIstio} and {@code istio.spring.*} properties,
+ * next to the live Istio resources, their drift from the desired state and the timings of the last reconciliation.
+ */
+@Endpoint(id = "istio")
+public class IstioEndpoint {
+
+    private final IstioService istioService;
+    private final EnableIstioAnnotationProcessor processor;
+    private final ApplicationStartupListener listener;
+
+    public IstioEndpoint(IstioService istioService, EnableIstioAnnotationProcessor processor,
+                         ApplicationStartupListener listener) {
+        this.istioService = istioService;
+        this.processor = processor;
+        this.listener = listener;
+    }
+
+    @ReadOperation
+    public Map<String, Object> istio() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("applicationName", istioService.getApplicationName());
+        List<EnableIstio> declarations = listener.getDeclarations();
+        if (declarations.isEmpty()) {
+            result.put("enabled", false);
+            return result;
+        }
+        result.put("enabled", true);
+        result.put("configuration", istioService.resolveAll(declarations).stream()
+                .map(this::configuration)
+                .toList());
+        result.put("lastReconcile", processor.getLastReconcile());
+        try {
+            Map<String, Object> resources = new LinkedHashMap<>();
+            DestinationRule dr = processor.getDestinationRule();
+            resources.put("DestinationRule", dr != null ? dr.getSpec() : null);
+            VirtualService vs = processor.getVirtualService();
+            resources.put("VirtualService", vs != null ? vs.getSpec() : null);
+            if (processor.isGatewayEnabled(declarations)) {
+                Gateway gateway = processor.getGateway();
+                resources.put("Gateway", gateway != null ? gateway.getSpec() : null);
+            }
+            result.put("resources", resources);
+            result.put("drift", processor.computeDrift(declarations));
+        } catch (KubernetesClientException e) {
+            result.put("error", e.getMessage());
+        }
+        return result;
+    }
+
+    private Map<String, Object> configuration(IstioConfig config) {
+        Map<String, String> sources = istioService.getConfigurationSources();
+        Map<String, Object> configuration = new LinkedHashMap<>();
+        configuration.put("timeout", value(config.timeout(), sources.get("timeout")));
+        configuration.put("version", value(config.version(), sources.get("version")));
+        configuration.put("weight", value(config.weight(), sources.get("weight")));
+        configuration.put("numberOfRetries", value(config.numberOfRetries(), sources.get("numberOfRetries")));
+        HTTPRetry retry = istioService.buildRetry(config);
+        configuration.put("perTryTimeout", retry != null ? retry.getPerTryTimeout() : null);
+        configuration.put("circuitBreakerErrors", value(config.circuitBreakerErrors(), sources.get("circuitBreakerErrors")));
+        configuration.put("enableGateway", value(config.enableGateway(), sources.get("enableGateway")));
+        configuration.put("domain", value(config.domain(), sources.get("domain")));
+        configuration.put("matches", value(config.matches().stream()
+                .map(istioService::buildHTTPMatchRequest)
+                .toList(), sources.get("matches")));
+        Map<String, Object> fault = new LinkedHashMap<>();
+        fault.put("percentage", value(config.faultPercentage(), sources.get("fault.percentage")));
+        if (config.faultPercentage() > 0)
+            fault.put("injection", istioService.buildFault(config));
+        configuration.put("fault", fault);
+        boolean poolFromProperties = sources.entrySet().stream()
+                .anyMatch(source -> source.getKey().startsWith("connectionPool.") && source.getValue().equals("properties"));
+        configuration.put("connectionPool", value(istioService.buildConnectionPool(config),
+                poolFromProperties ? "properties" : "annotation"));
+        configuration.put("loadBalancer", value(istioService.buildLoadBalancer(config),
+                sources.get("loadBalancer.policy")));
+        boolean outlierDetectionFromProperties = sources.entrySet().stream()
+                .anyMatch(source -> source.getKey().startsWith("outlierDetection.") && source.getValue().equals("properties"));
+        configuration.put("outlierDetection", value(istioService.buildCircuitBreaker(config).getOutlierDetection(),
+                outlierDetectionFromProperties ? "properties" : "annotation"));
+        return configuration;
+    }
+
+    private Map<String, Object> value(Object value, String source) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("value", value);
+        entry.put("source", source);
+        return entry;
+    }
+
+}
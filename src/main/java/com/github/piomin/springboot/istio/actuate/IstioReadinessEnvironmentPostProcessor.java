@@ -0,0 +1,37 @@
+package com.github.piomin.springboot.istio.actuate;
+
+import java.util.Map;
+
+import org.springframework.boot.EnvironmentPostProcessor;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Adds the {@code istio} health indicator to the readiness group next to {@code readinessState},
+ * unless the members of the group are configured by the application.
+ * The defaults are added as the last property source, so any other configuration of the group takes precedence.
+ */
+public class IstioReadinessEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    static final String PROPERTY_SOURCE_NAME = "istioReadinessGroup";
+    static final String READINESS_INCLUDE = "management.endpoint.health.group.readiness.include";
+    private static final String PROBES_ENABLED = "management.endpoint.health.probes.enabled";
+    private static final String HEALTH_INDICATOR = "org.springframework.boot.health.contributor.HealthIndicator";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!ClassUtils.isPresent(HEALTH_INDICATOR, getClass().getClassLoader()))
+            return;
+        // without the probes there is no readinessState indicator, and the group would fail its validation
+        if (!environment.getProperty(PROBES_ENABLED, Boolean.class, true))
+            return;
+        if (Binder.get(environment).bind(READINESS_INCLUDE, Bindable.listOf(String.class)).isBound())
+            return;
+        environment.getPropertySources().addLast(new MapPropertySource(PROPERTY_SOURCE_NAME,
+                Map.of(READINESS_INCLUDE, "readinessState,istio")));
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.piomin.springboot.istio.actuate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import com.github.piomin.springboot.istio.processor.ApplicationStartupListener;
+import com.github.piomin.springboot.istio.processor.EnableIstioAnnotationProcessor;
+import com.github.piomin.springboot.istio.processor.ReconcileSummary;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+
+/**
+ * Reports {@code OUT_OF_SERVICE} until the Istio resources are reconciled, so Kubernetes does not send traffic
+ * to a version whose subset is missing in the {@code DestinationRule}.
+ * After the fail-open timeout the indicator reports {@code UP} even if the reconciliation has not succeeded.
+ */
+public class IstioReconcileHealthIndicator implements HealthIndicator {
+
+    private final ApplicationStartupListener listener;
+    private final EnableIstioAnnotationProcessor processor;
+    private final long failOpenTimeout;
+    private final long createdAt = System.nanoTime();
+
+    /**
+     * @param listener listener running the startup reconciliation
+     * @param processor processor keeping the summary of the last reconciliation
+     * @param failOpenTimeout time in milliseconds after which the indicator reports {@code UP} anyway (0 means never)
+     */
+    public IstioReconcileHealthIndicator(ApplicationStartupListener listener, EnableIstioAnnotationProcessor processor,
+                                         long failOpenTimeout) {
+        this.listener = listener;
+        this.processor = processor;
+        this.failOpenTimeout = failOpenTimeout;
+    }
+
+    @Override
+    public Health health() {
+        CompletableFuture<Void> reconciliation = listener.getReconciliation();
+        ReconcileSummary summary = processor.getLastReconcile();
+        // a drift reconciliation may succeed after the startup one failed
+        if ((reconciliation.isDone() && !reconciliation.isCompletedExceptionally())
+                || (summary != null && summary.error() == null)) {
+            Health.Builder builder = Health.up();
+            if (summary != null)
+                builder.withDetail("lastReconcile", summary.finishedAt());
+            return builder.build();
+        }
+        Health.Builder builder = failedOpen() ? Health.up().withDetail("failOpen", true) : Health.outOfService();
+        if (reconciliation.isCompletedExceptionally())
+            builder.withDetail("error", errorOf(reconciliation));
+        else
+            builder.withDetail("reconciliation", "pending");
+        return builder.build();
+    }
+
+    private boolean failedOpen() {
+        return failOpenTimeout > 0
+                && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - createdAt) >= failOpenTimeout;
+    }
+
+    private String errorOf(CompletableFuture<Void> reconciliation) {
+        try {
+            reconciliation.join();
+            return null;
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            return cause.getMessage();
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.github.piomin.springboot.istio.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * Connection pool settings of the destination rule, {@code 0} leaves the Envoy default
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ConnectionPool {
+    /**
+     * Maximum number of TCP connections to a destination host
+     * @return max connections value
+     */
+    int maxConnections() default 0;
+
+    /**
+     * TCP connection timeout in milliseconds
+     * @return connect timeout value
+     */
+    long connectTimeout() default 0;
+
+    /**
+     * Maximum number of TCP keepalive probes sent without a response before the connection is dead
+     * @return keepalive probes value
+     */
+    int tcpKeepaliveProbes() default 0;
+
+    /**
+     * Idle time in milliseconds before the first TCP keepalive probe is sent
+     * @return keepalive time value
+     */
+    long tcpKeepaliveTime() default 0;
+
+    /**
+     * Time in milliseconds between TCP keepalive probes
+     * @return keepalive interval value
+     */
+    long tcpKeepaliveInterval() default 0;
+
+    /**
+     * Maximum number of requests queued while waiting for a ready connection
+     * @return max pending requests value
+     */
+    int http1MaxPendingRequests() default 0;
+
+    /**
+     * Maximum number of active requests to a destination
+     * @return max requests value
+     */
+    int http2MaxRequests() default 0;
+
+    /**
+     * Maximum number of requests per connection, {@code 1} disables keep-alive
+     * @return max requests per connection value
+     */
+    int maxRequestsPerConnection() default 0;
+
+    /**
+     * Maximum number of retries outstanding to all hosts at a time
+     * @return max retries value
+     */
+    int maxRetries() default 0;
+
+    /**
+     * Time in milliseconds after which a connection without active requests is closed
+     * @return idle timeout value
+     */
+    long idleTimeout() default 0;
+
+    H2UpgradePolicy h2UpgradePolicy() default H2UpgradePolicy.DEFAULT;
+}
@@ -30,8 +30,18 @@ public @interface EnableIstio {
      */
     int numberOfRetries() default 3;
 
+    /**
+     * Number of consecutive 5xx errors before a host is ejected, {@code 0} disables it
+     * @return circuit breaker errors value
+     */
     int circuitBreakerErrors() default 0;
 
+    OutlierDetection outlierDetection() default @OutlierDetection;
+
+    ConnectionPool connectionPool() default @ConnectionPool;
+
+    LoadBalancer loadBalancer() default @LoadBalancer;
+
     Match[] matches() default {};
   
     Fault fault() default @Fault(percentage = 0);
@@ -0,0 +1,5 @@
+package com.github.piomin.springboot.istio.annotation;
+
+public enum H2UpgradePolicy {
+    DEFAULT, DO_NOT_UPGRADE, UPGRADE
+}
@@ -0,0 +1,5 @@
+package com.github.piomin.springboot.istio.annotation;
+
+public enum HashKey {
+    NONE, HEADER, COOKIE, QUERY_PARAMETER, SOURCE_IP
+}
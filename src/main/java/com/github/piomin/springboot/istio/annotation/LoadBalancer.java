@@ -0,0 +1,41 @@
+package com.github.piomin.springboot.istio.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * Load balancer settings of the destination rule
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface LoadBalancer {
+    /**
+     * Load balancing policy, {@code DEFAULT} leaves the mesh default
+     * @return policy value
+     */
+    LoadBalancerPolicy policy() default LoadBalancerPolicy.DEFAULT;
+
+    /**
+     * Source of the hash key, required by {@code RING_HASH} and {@code MAGLEV}
+     * @return hash key value
+     */
+    HashKey hashKey() default HashKey.NONE;
+
+    /**
+     * Name of the header, cookie or query parameter used as the hash key
+     * @return hash key name value
+     */
+    String hashKeyName() default "";
+
+    /**
+     * Lifetime in milliseconds of the cookie generated by Envoy, if it is missing in the request
+     * @return cookie ttl value
+     */
+    long cookieTtl() default 0;
+
+    /**
+     * Minimum size of the ring for {@code RING_HASH}, or the prime size of the lookup table for {@code MAGLEV}
+     * @return ring size value
+     */
+    long ringSize() default 0;
+}
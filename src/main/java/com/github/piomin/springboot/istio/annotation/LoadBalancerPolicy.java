@@ -0,0 +1,5 @@
+package com.github.piomin.springboot.istio.annotation;
+
+public enum LoadBalancerPolicy {
+    DEFAULT, ROUND_ROBIN, LEAST_REQUEST, RANDOM, PASSTHROUGH, RING_HASH, MAGLEV
+}
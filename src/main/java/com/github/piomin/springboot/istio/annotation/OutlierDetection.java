@@ -0,0 +1,53 @@
+package com.github.piomin.springboot.istio.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * Outlier detection settings of the destination rule, enabled by the consecutive errors thresholds
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface OutlierDetection {
+    /**
+     * Time in milliseconds between ejection sweep analysis
+     * @return interval value
+     */
+    long interval() default 10000;
+
+    /**
+     * Minimum ejection duration in milliseconds, multiplied by the number of times the host has been ejected
+     * @return base ejection time value
+     */
+    long baseEjectionTime() default 30000;
+
+    /**
+     * Maximum percentage of hosts that can be ejected
+     * @return max ejection percent value
+     */
+    int maxEjectionPercent() default 50;
+
+    /**
+     * Outlier detection is disabled when the percentage of healthy hosts drops below this value
+     * @return min health percent value
+     */
+    int minHealthPercent() default 50;
+
+    /**
+     * Number of gateway errors (502, 503, 504) before a host is ejected, {@code 0} disables it
+     * @return consecutive gateway errors value
+     */
+    int consecutiveGatewayErrors() default 0;
+
+    /**
+     * Number of locally originated failures, like connection timeouts, before a host is ejected, {@code 0} disables it
+     * @return consecutive local origin failures value
+     */
+    int consecutiveLocalOriginFailures() default 0;
+
+    /**
+     * Distinguish locally originated failures from the errors returned by the upstream host
+     * @return split external local origin errors value
+     */
+    boolean splitExternalLocalOriginErrors() default false;
+}
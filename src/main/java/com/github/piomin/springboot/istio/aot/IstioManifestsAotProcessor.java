@@ -0,0 +1,53 @@
+package com.github.piomin.springboot.istio.aot;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.config.IstioProperties;
+import com.github.piomin.springboot.istio.processor.EnableIstioAnnotationProcessor;
+import com.github.piomin.springboot.istio.service.IstioService;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotContribution;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+
+/**
+ * Generates the Istio resources during the Spring AOT processing of the application.
+ * The manifests are written as {@code META-INF/istio/<kind>.yaml} to the generated resources,
+ * e.g. {@code target/spring-aot/main/resources}, so they may be reviewed and applied by a GitOps tool.
+ * Pair it with {@code istio.spring.reconcile.enabled=false} to skip API calls at runtime.
+ */
+class IstioManifestsAotProcessor implements BeanFactoryInitializationAotProcessor {
+
+    private static final String LOCATION = "META-INF/istio/";
+
+    private final Logger LOGGER = LoggerFactory.getLogger(IstioManifestsAotProcessor.class);
+
+    @Override
+    public BeanFactoryInitializationAotContribution processAheadOfTime(ConfigurableListableBeanFactory beanFactory) {
+        List<EnableIstio> annotations = Arrays.stream(beanFactory.getBeanNamesForAnnotation(EnableIstio.class))
+                .sorted()
+                .map(name -> beanFactory.findAnnotationOnBean(name, EnableIstio.class))
+                .toList();
+        if (annotations.isEmpty())
+            return null;
+        Environment environment = beanFactory.getBean(Environment.class);
+        IstioProperties properties = Binder.get(environment)
+                .bind("istio.spring", IstioProperties.class)
+                .orElseGet(IstioProperties::new);
+        IstioService istioService = new IstioService(environment.getProperty("spring.application.name"), properties);
+        // the client is not used to build resources
+        List<HasMetadata> resources = new EnableIstioAnnotationProcessor(null, istioService).buildResources(annotations);
+        return (generationContext, code) -> resources.forEach(resource -> {
+            String path = LOCATION + resource.getKind().toLowerCase() + ".yaml";
+            generationContext.getGeneratedFiles().addResourceFile(path, Serialization.asYaml(resource));
+            LOGGER.info("Istio manifest generated: {}", path);
+        });
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.piomin.springboot.istio.aot;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.github.piomin.springboot.istio.annotation.ConnectionPool;
+import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.annotation.Fault;
+import com.github.piomin.springboot.istio.annotation.LoadBalancer;
+import com.github.piomin.springboot.istio.annotation.Match;
+import com.github.piomin.springboot.istio.annotation.OutlierDetection;
+import com.github.piomin.springboot.istio.index.EnableIstioIndex;
+import io.fabric8.istio.api.networking.v1beta1.DestinationRule;
+import io.fabric8.istio.api.networking.v1beta1.DestinationRuleList;
+import io.fabric8.istio.api.networking.v1beta1.Gateway;
+import io.fabric8.istio.api.networking.v1beta1.GatewayList;
+import io.fabric8.istio.api.networking.v1beta1.VirtualService;
+import io.fabric8.istio.api.networking.v1beta1.VirtualServiceList;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.api.model.coordination.v1.Lease;
+import io.fabric8.kubernetes.api.model.coordination.v1.LeaseList;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+/**
+ * Registers the reflection used by Jackson to (de)serialize the fabric8 resources written and read by the library,
+ * and the {@code @EnableIstio} index, so the library works in a GraalVM native image.
+ */
+public class IstioRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final List<Class<?>> RESOURCES = List.of(DestinationRule.class, DestinationRuleList.class,
+            VirtualService.class, VirtualServiceList.class, Gateway.class, GatewayList.class,
+            Lease.class, LeaseList.class, Pod.class, PodList.class);
+
+    private static final MemberCategory[] MODEL_CATEGORIES = {MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+            MemberCategory.INVOKE_PUBLIC_METHODS, MemberCategory.DECLARED_FIELDS};
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        Set<Class<?>> visited = new HashSet<>();
+        RESOURCES.forEach(type -> registerModel(hints, type, visited));
+        for (Class<?> annotation : List.of(EnableIstio.class, Match.class, Fault.class, ConnectionPool.class,
+                LoadBalancer.class, OutlierDetection.class))
+            hints.reflection().registerType(annotation, MemberCategory.INVOKE_PUBLIC_METHODS);
+        hints.resources().registerPattern(EnableIstioIndex.LOCATION);
+        EnableIstioIndex.load(classLoader).ifPresent(names -> names.forEach(name -> hints.reflection()
+                .registerType(TypeReference.of(name), MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)));
+    }
+
+    // the model classes are generated, so instead of listing them all, the types reachable from resources are walked
+    private void registerModel(RuntimeHints hints, Type type, Set<Class<?>> visited) {
+        if (type instanceof ParameterizedType parameterized) {
+            for (Type argument : parameterized.getActualTypeArguments())
+                registerModel(hints, argument, visited);
+            return;
+        }
+        if (!(type instanceof Class<?> clazz) || !clazz.getName().startsWith("io.fabric8.") || !visited.add(clazz))
+            return;
+        hints.reflection().registerType(clazz, MODEL_CATEGORIES);
+        JsonDeserialize deserialize = clazz.getAnnotation(JsonDeserialize.class);
+        if (deserialize != null && deserialize.using() != JsonDeserializer.None.class)
+            hints.reflection().registerType(deserialize.using(), MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        // one-of fields are declared with interfaces, their implementations are listed as subtypes
+        JsonSubTypes subTypes = clazz.getAnnotation(JsonSubTypes.class);
+        if (subTypes != null) {
+            for (JsonSubTypes.Type subType : subTypes.value())
+                registerModel(hints, subType.value(), visited);
+        }
+        for (Field field : clazz.getDeclaredFields())
+            registerModel(hints, field.getGenericType(), visited);
+        if (clazz.getSuperclass() != null)
+            registerModel(hints, clazz.getSuperclass(), visited);
+    }
+}
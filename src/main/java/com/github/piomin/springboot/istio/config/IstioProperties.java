@@ -1,6 +1,9 @@
 package com.github.piomin.springboot.istio.config;
 
 import com.github.piomin.springboot.istio.annotation.FaultType;
+import com.github.piomin.springboot.istio.annotation.H2UpgradePolicy;
+import com.github.piomin.springboot.istio.annotation.HashKey;
+import com.github.piomin.springboot.istio.annotation.LoadBalancerPolicy;
 import com.github.piomin.springboot.istio.annotation.MatchMode;
 import com.github.piomin.springboot.istio.annotation.MatchType;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -19,7 +22,18 @@ public class IstioProperties {
     private Boolean enableGateway;
     private String domain;
     private FaultProperties fault = new FaultProperties();
+    private ConnectionPoolProperties connectionPool = new ConnectionPoolProperties();
+    private LoadBalancerProperties loadBalancer = new LoadBalancerProperties();
+    private OutlierDetectionProperties outlierDetection = new OutlierDetectionProperties();
     private List<MatchProperties> matches = new ArrayList<>();
+    private boolean optimizeMatches = true;
+    private boolean useIndex = false;
+    private ReconcileProperties reconcile = new ReconcileProperties();
+    private LeaderElectionProperties leaderElection = new LeaderElectionProperties();
+    private RateLimitProperties rateLimit = new RateLimitProperties();
+    private PruneProperties prune = new PruneProperties();
+    private AdaptiveTimeoutProperties adaptiveTimeout = new AdaptiveTimeoutProperties();
+    private CanaryProperties canary = new CanaryProperties();
 
     public Integer getTimeout() { return timeout; }
     public void setTimeout(Integer timeout) { this.timeout = timeout; }
@@ -45,9 +59,42 @@ public class IstioProperties {
     public FaultProperties getFault() { return fault; }
     public void setFault(FaultProperties fault) { this.fault = fault; }
 
+    public ConnectionPoolProperties getConnectionPool() { return connectionPool; }
+    public void setConnectionPool(ConnectionPoolProperties connectionPool) { this.connectionPool = connectionPool; }
+
+    public LoadBalancerProperties getLoadBalancer() { return loadBalancer; }
+    public void setLoadBalancer(LoadBalancerProperties loadBalancer) { this.loadBalancer = loadBalancer; }
+
+    public OutlierDetectionProperties getOutlierDetection() { return outlierDetection; }
+    public void setOutlierDetection(OutlierDetectionProperties outlierDetection) { this.outlierDetection = outlierDetection; }
+
     public List<MatchProperties> getMatches() { return matches; }
     public void setMatches(List<MatchProperties> matches) { this.matches = matches; }
 
+    public boolean isOptimizeMatches() { return optimizeMatches; }
+    public void setOptimizeMatches(boolean optimizeMatches) { this.optimizeMatches = optimizeMatches; }
+
+    public boolean isUseIndex() { return useIndex; }
+    public void setUseIndex(boolean useIndex) { this.useIndex = useIndex; }
+
+    public ReconcileProperties getReconcile() { return reconcile; }
+    public void setReconcile(ReconcileProperties reconcile) { this.reconcile = reconcile; }
+
+    public LeaderElectionProperties getLeaderElection() { return leaderElection; }
+    public void setLeaderElection(LeaderElectionProperties leaderElection) { this.leaderElection = leaderElection; }
+
+    public RateLimitProperties getRateLimit() { return rateLimit; }
+    public void setRateLimit(RateLimitProperties rateLimit) { this.rateLimit = rateLimit; }
+
+    public PruneProperties getPrune() { return prune; }
+    public void setPrune(PruneProperties prune) { this.prune = prune; }
+
+    public AdaptiveTimeoutProperties getAdaptiveTimeout() { return adaptiveTimeout; }
+    public void setAdaptiveTimeout(AdaptiveTimeoutProperties adaptiveTimeout) { this.adaptiveTimeout = adaptiveTimeout; }
+
+    public CanaryProperties getCanary() { return canary; }
+    public void setCanary(CanaryProperties canary) { this.canary = canary; }
+
     public static class FaultProperties {
         private FaultType type;
         private Integer percentage;
@@ -67,6 +114,107 @@ public class IstioProperties {
         public void setDelay(Long delay) { this.delay = delay; }
     }
 
+    public static class ConnectionPoolProperties {
+        private Integer maxConnections;
+        private Long connectTimeout;
+        private Integer tcpKeepaliveProbes;
+        private Long tcpKeepaliveTime;
+        private Long tcpKeepaliveInterval;
+        private Integer http1MaxPendingRequests;
+        private Integer http2MaxRequests;
+        private Integer maxRequestsPerConnection;
+        private Integer maxRetries;
+        private Long idleTimeout;
+        private H2UpgradePolicy h2UpgradePolicy;
+
+        public Integer getMaxConnections() { return maxConnections; }
+        public void setMaxConnections(Integer maxConnections) { this.maxConnections = maxConnections; }
+
+        public Long getConnectTimeout() { return connectTimeout; }
+        public void setConnectTimeout(Long connectTimeout) { this.connectTimeout = connectTimeout; }
+
+        public Integer getTcpKeepaliveProbes() { return tcpKeepaliveProbes; }
+        public void setTcpKeepaliveProbes(Integer tcpKeepaliveProbes) { this.tcpKeepaliveProbes = tcpKeepaliveProbes; }
+
+        public Long getTcpKeepaliveTime() { return tcpKeepaliveTime; }
+        public void setTcpKeepaliveTime(Long tcpKeepaliveTime) { this.tcpKeepaliveTime = tcpKeepaliveTime; }
+
+        public Long getTcpKeepaliveInterval() { return tcpKeepaliveInterval; }
+        public void setTcpKeepaliveInterval(Long tcpKeepaliveInterval) { this.tcpKeepaliveInterval = tcpKeepaliveInterval; }
+
+        public Integer getHttp1MaxPendingRequests() { return http1MaxPendingRequests; }
+        public void setHttp1MaxPendingRequests(Integer http1MaxPendingRequests) { this.http1MaxPendingRequests = http1MaxPendingRequests; }
+
+        public Integer getHttp2MaxRequests() { return http2MaxRequests; }
+        public void setHttp2MaxRequests(Integer http2MaxRequests) { this.http2MaxRequests = http2MaxRequests; }
+
+        public Integer getMaxRequestsPerConnection() { return maxRequestsPerConnection; }
+        public void setMaxRequestsPerConnection(Integer maxRequestsPerConnection) { this.maxRequestsPerConnection = maxRequestsPerConnection; }
+
+        public Integer getMaxRetries() { return maxRetries; }
+        public void setMaxRetries(Integer maxRetries) { this.maxRetries = maxRetries; }
+
+        public Long getIdleTimeout() { return idleTimeout; }
+        public void setIdleTimeout(Long idleTimeout) { this.idleTimeout = idleTimeout; }
+
+        public H2UpgradePolicy getH2UpgradePolicy() { return h2UpgradePolicy; }
+        public void setH2UpgradePolicy(H2UpgradePolicy h2UpgradePolicy) { this.h2UpgradePolicy = h2UpgradePolicy; }
+    }
+
+    public static class LoadBalancerProperties {
+        private LoadBalancerPolicy policy;
+        private HashKey hashKey;
+        private String hashKeyName;
+        private Long cookieTtl;
+        private Long ringSize;
+
+        public LoadBalancerPolicy getPolicy() { return policy; }
+        public void setPolicy(LoadBalancerPolicy policy) { this.policy = policy; }
+
+        public HashKey getHashKey() { return hashKey; }
+        public void setHashKey(HashKey hashKey) { this.hashKey = hashKey; }
+
+        public String getHashKeyName() { return hashKeyName; }
+        public void setHashKeyName(String hashKeyName) { this.hashKeyName = hashKeyName; }
+
+        public Long getCookieTtl() { return cookieTtl; }
+        public void setCookieTtl(Long cookieTtl) { this.cookieTtl = cookieTtl; }
+
+        public Long getRingSize() { return ringSize; }
+        public void setRingSize(Long ringSize) { this.ringSize = ringSize; }
+    }
+
+    public static class OutlierDetectionProperties {
+        private Long interval;
+        private Long baseEjectionTime;
+        private Integer maxEjectionPercent;
+        private Integer minHealthPercent;
+        private Integer consecutiveGatewayErrors;
+        private Integer consecutiveLocalOriginFailures;
+        private Boolean splitExternalLocalOriginErrors;
+
+        public Long getInterval() { return interval; }
+        public void setInterval(Long interval) { this.interval = interval; }
+
+        public Long getBaseEjectionTime() { return baseEjectionTime; }
+        public void setBaseEjectionTime(Long baseEjectionTime) { this.baseEjectionTime = baseEjectionTime; }
+
+        public Integer getMaxEjectionPercent() { return maxEjectionPercent; }
+        public void setMaxEjectionPercent(Integer maxEjectionPercent) { this.maxEjectionPercent = maxEjectionPercent; }
+
+        public Integer getMinHealthPercent() { return minHealthPercent; }
+        public void setMinHealthPercent(Integer minHealthPercent) { this.minHealthPercent = minHealthPercent; }
+
+        public Integer getConsecutiveGatewayErrors() { return consecutiveGatewayErrors; }
+        public void setConsecutiveGatewayErrors(Integer consecutiveGatewayErrors) { this.consecutiveGatewayErrors = consecutiveGatewayErrors; }
+
+        public Integer getConsecutiveLocalOriginFailures() { return consecutiveLocalOriginFailures; }
+        public void setConsecutiveLocalOriginFailures(Integer consecutiveLocalOriginFailures) { this.consecutiveLocalOriginFailures = consecutiveLocalOriginFailures; }
+
+        public Boolean getSplitExternalLocalOriginErrors() { return splitExternalLocalOriginErrors; }
+        public void setSplitExternalLocalOriginErrors(Boolean splitExternalLocalOriginErrors) { this.splitExternalLocalOriginErrors = splitExternalLocalOriginErrors; }
+    }
+
     public static class MatchProperties {
         private boolean ignoreUriCase = false;
         private MatchType type = MatchType.URI;
@@ -89,4 +237,158 @@ public class IstioProperties {
         public String getKey() { return key; }
         public void setKey(String key) { this.key = key; }
     }
+
+    public static class ReconcileProperties {
+        private boolean enabled = true;
+        private boolean async = false;
+        private long timeout = 30000;
+        private boolean serverSideApply = false;
+        private String fieldManager;
+        private boolean watch = false;
+        private long watchInterval = 10000;
+        private int conflictRetries = 5;
+        private long conflictBackoff = 100;
+        private long readinessTimeout = 60000;
+        private long refreshDebounce = 1000;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public boolean isAsync() { return async; }
+        public void setAsync(boolean async) { this.async = async; }
+
+        public long getTimeout() { return timeout; }
+        public void setTimeout(long timeout) { this.timeout = timeout; }
+
+        public boolean isServerSideApply() { return serverSideApply; }
+        public void setServerSideApply(boolean serverSideApply) { this.serverSideApply = serverSideApply; }
+
+        public String getFieldManager() { return fieldManager; }
+        public void setFieldManager(String fieldManager) { this.fieldManager = fieldManager; }
+
+        public boolean isWatch() { return watch; }
+        public void setWatch(boolean watch) { this.watch = watch; }
+
+        public long getWatchInterval() { return watchInterval; }
+        public void setWatchInterval(long watchInterval) { this.watchInterval = watchInterval; }
+
+        public int getConflictRetries() { return conflictRetries; }
+        public void setConflictRetries(int conflictRetries) { this.conflictRetries = conflictRetries; }
+
+        public long getConflictBackoff() { return conflictBackoff; }
+        public void setConflictBackoff(long conflictBackoff) { this.conflictBackoff = conflictBackoff; }
+
+        public long getReadinessTimeout() { return readinessTimeout; }
+        public void setReadinessTimeout(long readinessTimeout) { this.readinessTimeout = readinessTimeout; }
+
+        public long getRefreshDebounce() { return refreshDebounce; }
+        public void setRefreshDebounce(long refreshDebounce) { this.refreshDebounce = refreshDebounce; }
+    }
+
+    public static class LeaderElectionProperties {
+        private boolean enabled = false;
+        private long leaseDuration = 15000;
+        private long renewDeadline = 10000;
+        private long retryPeriod = 2000;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public long getLeaseDuration() { return leaseDuration; }
+        public void setLeaseDuration(long leaseDuration) { this.leaseDuration = leaseDuration; }
+
+        public long getRenewDeadline() { return renewDeadline; }
+        public void setRenewDeadline(long renewDeadline) { this.renewDeadline = renewDeadline; }
+
+        public long getRetryPeriod() { return retryPeriod; }
+        public void setRetryPeriod(long retryPeriod) { this.retryPeriod = retryPeriod; }
+    }
+
+    public static class RateLimitProperties {
+        private double qps = 0;
+        private int burst = 10;
+        private long startupJitter = 0;
+
+        public double getQps() { return qps; }
+        public void setQps(double qps) { this.qps = qps; }
+
+        public int getBurst() { return burst; }
+        public void setBurst(int burst) { this.burst = burst; }
+
+        public long getStartupJitter() { return startupJitter; }
+        public void setStartupJitter(long startupJitter) { this.startupJitter = startupJitter; }
+    }
+
+    public static class PruneProperties {
+        private boolean enabled = false;
+        private long gracePeriod = 3600000;
+        private long interval = 300000;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public long getGracePeriod() { return gracePeriod; }
+        public void setGracePeriod(long gracePeriod) { this.gracePeriod = gracePeriod; }
+
+        public long getInterval() { return interval; }
+        public void setInterval(long interval) { this.interval = interval; }
+    }
+
+    public static class AdaptiveTimeoutProperties {
+        private boolean enabled = false;
+        private long interval = 60000;
+        private double headroom = 0.5;
+        private long minTimeout = 100;
+        private long maxTimeout = 30000;
+        private double hysteresis = 0.2;
+        private long minSamples = 100;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public long getInterval() { return interval; }
+        public void setInterval(long interval) { this.interval = interval; }
+
+        public double getHeadroom() { return headroom; }
+        public void setHeadroom(double headroom) { this.headroom = headroom; }
+
+        public long getMinTimeout() { return minTimeout; }
+        public void setMinTimeout(long minTimeout) { this.minTimeout = minTimeout; }
+
+        public long getMaxTimeout() { return maxTimeout; }
+        public void setMaxTimeout(long maxTimeout) { this.maxTimeout = maxTimeout; }
+
+        public double getHysteresis() { return hysteresis; }
+        public void setHysteresis(double hysteresis) { this.hysteresis = hysteresis; }
+
+        public long getMinSamples() { return minSamples; }
+        public void setMinSamples(long minSamples) { this.minSamples = minSamples; }
+    }
+
+    public static class CanaryProperties {
+        private boolean enabled = false;
+        private List<Integer> steps = new ArrayList<>(List.of(5, 25, 50, 100));
+        private long interval = 60000;
+        private long maxLatency = 1000;
+        private double maxErrorRate = 0.01;
+        private long minSamples = 100;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public List<Integer> getSteps() { return steps; }
+        public void setSteps(List<Integer> steps) { this.steps = steps; }
+
+        public long getInterval() { return interval; }
+        public void setInterval(long interval) { this.interval = interval; }
+
+        public long getMaxLatency() { return maxLatency; }
+        public void setMaxLatency(long maxLatency) { this.maxLatency = maxLatency; }
+
+        public double getMaxErrorRate() { return maxErrorRate; }
+        public void setMaxErrorRate(double maxErrorRate) { this.maxErrorRate = maxErrorRate; }
+
+        public long getMinSamples() { return minSamples; }
+        public void setMinSamples(long minSamples) { this.minSamples = minSamples; }
+    }
 }
@@ -1,12 +1,31 @@
 package com.github.piomin.springboot.istio.config;
 
+import com.github.piomin.springboot.istio.actuate.IstioEndpoint;
+import com.github.piomin.springboot.istio.actuate.IstioReconcileHealthIndicator;
+import com.github.piomin.springboot.istio.metrics.AdaptiveTimeoutTuner;
+import com.github.piomin.springboot.istio.metrics.CanaryController;
+import com.github.piomin.springboot.istio.metrics.MicrometerReconcileMetrics;
 import com.github.piomin.springboot.istio.processor.ApplicationStartupListener;
 import com.github.piomin.springboot.istio.processor.EnableIstioAnnotationProcessor;
+import com.github.piomin.springboot.istio.processor.IstioConfigRefresher;
+import com.github.piomin.springboot.istio.processor.IstioLeaderElection;
+import com.github.piomin.springboot.istio.processor.IstioResourceCache;
+import com.github.piomin.springboot.istio.processor.ReconcileMetrics;
+import com.github.piomin.springboot.istio.processor.RequestBudget;
+import com.github.piomin.springboot.istio.processor.VersionPruner;
 import com.github.piomin.springboot.istio.service.IstioService;
 import io.fabric8.istio.client.DefaultIstioClient;
 import io.fabric8.istio.client.IstioClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -27,13 +46,124 @@ public class SpringBootIstioAutoConfiguration {
     }
 
     @Bean
-    ApplicationStartupListener listener(ApplicationContext context) {
-        return new ApplicationStartupListener(context, istioAnnotationProcessor());
+    ApplicationStartupListener listener(ApplicationContext context, EnableIstioAnnotationProcessor processor,
+                                        IstioProperties properties,
+                                        ObjectProvider<IstioResourceCache> resourceCache,
+                                        ObjectProvider<VersionPruner> versionPruner) {
+        return new ApplicationStartupListener(context, processor, properties, resourceCache.getIfAvailable(),
+                versionPruner.getIfAvailable());
     }
 
     @Bean
-    EnableIstioAnnotationProcessor istioAnnotationProcessor() {
-        return new EnableIstioAnnotationProcessor(istioClient(), istioService());
+    EnableIstioAnnotationProcessor istioAnnotationProcessor(IstioProperties properties,
+                                                            ObjectProvider<IstioResourceCache> resourceCache,
+                                                            ObjectProvider<IstioLeaderElection> leaderElection,
+                                                            ObjectProvider<RequestBudget> requestBudget,
+                                                            ObjectProvider<VersionPruner> versionPruner,
+                                                            ObjectProvider<ReconcileMetrics> metrics) {
+        return new EnableIstioAnnotationProcessor(istioClient(), istioService(), properties,
+                resourceCache.getIfAvailable(), leaderElection.getIfAvailable(), requestBudget.getIfAvailable(),
+                versionPruner.getIfAvailable(), metrics.getIfAvailable());
+    }
+
+    @Bean
+    RequestBudget istioRequestBudget(IstioProperties properties, ObjectProvider<ReconcileMetrics> metrics) {
+        IstioProperties.RateLimitProperties rateLimit = properties.getRateLimit();
+        return new RequestBudget(rateLimit.getQps(), rateLimit.getBurst(), rateLimit.getStartupJitter(),
+                metrics.getIfAvailable());
+    }
+
+    @ConditionalOnProperty(prefix = "istio.spring.leader-election", name = "enabled", havingValue = "true")
+    @Bean
+    IstioLeaderElection istioLeaderElection(IstioProperties properties, RequestBudget requestBudget) {
+        return new IstioLeaderElection(istioClient(), istioService(), properties, requestBudget);
+    }
+
+    @ConditionalOnProperty(prefix = "istio.spring.reconcile", name = "watch", havingValue = "true")
+    @Bean
+    IstioResourceCache istioResourceCache(IstioProperties properties, RequestBudget requestBudget) {
+        return new IstioResourceCache(istioClient(), istioService(), properties.getReconcile().getWatchInterval(),
+                requestBudget);
+    }
+
+    @ConditionalOnProperty(prefix = "istio.spring.prune", name = "enabled", havingValue = "true")
+    @Bean
+    VersionPruner istioVersionPruner(IstioProperties properties, RequestBudget requestBudget) {
+        return new VersionPruner(istioClient(), istioService(), properties.getPrune().getGracePeriod(),
+                properties.getPrune().getInterval(), requestBudget);
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(MeterRegistry.class)
+    static class IstioMetricsConfiguration {
+
+        @ConditionalOnMissingBean
+        @Bean
+        ReconcileMetrics istioReconcileMetrics(ObjectProvider<MeterRegistry> registry) {
+            return new MicrometerReconcileMetrics(registry.getIfAvailable(() -> Metrics.globalRegistry));
+        }
+
+        @ConditionalOnProperty(prefix = "istio.spring.adaptive-timeout", name = "enabled", havingValue = "true")
+        @Bean
+        AdaptiveTimeoutTuner istioAdaptiveTimeoutTuner(ObjectProvider<MeterRegistry> registry,
+                                                       IstioService istioService,
+                                                       EnableIstioAnnotationProcessor processor,
+                                                       ApplicationStartupListener listener,
+                                                       IstioProperties properties) {
+            return new AdaptiveTimeoutTuner(registry.getIfAvailable(() -> Metrics.globalRegistry), istioService,
+                    processor, listener, properties.getAdaptiveTimeout());
+        }
+
+        @ConditionalOnProperty(prefix = "istio.spring.canary", name = "enabled", havingValue = "true")
+        @Bean
+        CanaryController istioCanaryController(ObjectProvider<MeterRegistry> registry,
+                                               IstioService istioService,
+                                               EnableIstioAnnotationProcessor processor,
+                                               ApplicationStartupListener listener,
+                                               IstioProperties properties) {
+            return new CanaryController(registry.getIfAvailable(() -> Metrics.globalRegistry), istioService,
+                    processor, listener, properties.getCanary());
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(Endpoint.class)
+    static class IstioEndpointConfiguration {
+
+        @ConditionalOnMissingBean
+        @Bean
+        IstioEndpoint istioEndpoint(IstioService istioService, EnableIstioAnnotationProcessor processor,
+                                    ApplicationStartupListener listener) {
+            return new IstioEndpoint(istioService, processor, listener);
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(HealthIndicator.class)
+    static class IstioHealthConfiguration {
+
+        @ConditionalOnMissingBean(name = "istioHealthIndicator")
+        @Bean
+        IstioReconcileHealthIndicator istioHealthIndicator(ApplicationStartupListener listener,
+                                                           EnableIstioAnnotationProcessor processor,
+                                                           IstioProperties properties) {
+            return new IstioReconcileHealthIndicator(listener, processor,
+                    properties.getReconcile().getReadinessTimeout());
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(EnvironmentChangeEvent.class)
+    static class IstioRefreshConfiguration {
+
+        @Bean
+        IstioConfigRefresher istioConfigRefresher(IstioService istioService,
+                                                  EnableIstioAnnotationProcessor processor,
+                                                  ApplicationStartupListener listener,
+                                                  IstioProperties properties) {
+            return new IstioConfigRefresher(istioService, processor, listener,
+                    properties.getReconcile().getRefreshDebounce());
+        }
     }
 
 }
@@ -0,0 +1,45 @@
+package com.github.piomin.springboot.istio.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Reads the names of classes annotated with {@code @EnableIstio}, recorded at compile time by {@link EnableIstioIndexer}.
+ */
+public final class EnableIstioIndex {
+
+    public static final String LOCATION = "META-INF/istio/enable-istio.index";
+
+    private EnableIstioIndex() {
+    }
+
+    /**
+     * @param classLoader class loader used to find the index files
+     * @return sorted class names merged from all index files on the classpath, empty if there is no index
+     */
+    public static Optional<List<String>> load(ClassLoader classLoader) {
+        try {
+            Enumeration<URL> urls = classLoader.getResources(LOCATION);
+            if (!urls.hasMoreElements())
+                return Optional.empty();
+            TreeSet<String> names = new TreeSet<>();
+            while (urls.hasMoreElements()) {
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(urls.nextElement().openStream(), StandardCharsets.UTF_8))) {
+                    reader.lines().map(String::trim).filter(line -> !line.isEmpty()).forEach(names::add);
+                }
+            }
+            return Optional.of(List.copyOf(names));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + LOCATION, e);
+        }
+    }
+}
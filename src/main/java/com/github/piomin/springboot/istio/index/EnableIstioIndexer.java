@@ -0,0 +1,87 @@
+package com.github.piomin.springboot.istio.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor recording classes annotated with {@code @EnableIstio} in {@link EnableIstioIndex#LOCATION},
+ * so they are not searched among all beans on startup.
+ * It is discovered by the compiler of the application from the library jar.
+ */
+@SupportedAnnotationTypes(EnableIstioIndexer.ANNOTATION)
+public class EnableIstioIndexer extends AbstractProcessor {
+
+    static final String ANNOTATION = "com.github.piomin.springboot.istio.annotation.EnableIstio";
+
+    private final Set<String> names = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element instanceof TypeElement type)
+                    names.add(processingEnv.getElementUtils().getBinaryName(type).toString());
+            }
+        }
+        if (roundEnv.processingOver() && !names.isEmpty())
+            writeIndex();
+        return false;
+    }
+
+    private void writeIndex() {
+        // on incremental compilation only changed sources are processed, so entries of other classes are kept
+        names.addAll(readPreviousIndex());
+        try {
+            FileObject file = processingEnv.getFiler()
+                    .createResource(StandardLocation.CLASS_OUTPUT, "", EnableIstioIndex.LOCATION);
+            try (Writer writer = file.openWriter()) {
+                for (String name : names)
+                    writer.write(name + "\n");
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write " + EnableIstioIndex.LOCATION + ": " + e.getMessage());
+        }
+    }
+
+    private Set<String> readPreviousIndex() {
+        Set<String> previous = new TreeSet<>();
+        try {
+            FileObject file = processingEnv.getFiler()
+                    .getResource(StandardLocation.CLASS_OUTPUT, "", EnableIstioIndex.LOCATION);
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(file.openInputStream(), StandardCharsets.UTF_8))) {
+                reader.lines().map(String::trim).filter(this::isStillAnnotated).forEach(previous::add);
+            }
+        } catch (IOException e) {
+            // no index yet
+        }
+        return previous;
+    }
+
+    private boolean isStillAnnotated(String name) {
+        TypeElement type = processingEnv.getElementUtils().getTypeElement(name.replace('$', '.'));
+        return type != null && type.getAnnotationMirrors().stream()
+                .anyMatch(mirror -> mirror.getAnnotationType().toString().equals(ANNOTATION));
+    }
+}
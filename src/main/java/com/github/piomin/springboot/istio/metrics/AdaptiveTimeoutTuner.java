@@ -0,0 +1,164 @@
+package com.github.piomin.springboot.istio.metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.config.IstioProperties;
+import com.github.piomin.springboot.istio.processor.ApplicationStartupListener;
+import com.github.piomin.springboot.istio.processor.EnableIstioAnnotationProcessor;
+import com.github.piomin.springboot.istio.processor.IstioSchedulers;
+import com.github.piomin.springboot.istio.service.IstioService;
+import com.github.piomin.springboot.istio.service.TimeoutOverride;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Derives the route and per-try timeouts from the latency of the application measured by {@code http.server.requests}.
+ * On each tick the timeouts are computed from p99 and p99.9 of the requests observed since the previous tick,
+ * and the VirtualService routes are patched when they differ from the live route by more than the hysteresis.
+ * The latency of all endpoints is measured together, so with several declarations the same timeouts
+ * are applied on the routes of all of them.
+ */
+public class AdaptiveTimeoutTuner implements AutoCloseable {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(AdaptiveTimeoutTuner.class);
+    private final RequestWindow requests;
+    private final IstioService istioService;
+    private final EnableIstioAnnotationProcessor processor;
+    private final ApplicationStartupListener listener;
+    private final IstioProperties.AdaptiveTimeoutProperties properties;
+    private final ScheduledExecutorService workQueue;
+    private boolean histogramMissingReported;
+
+    public AdaptiveTimeoutTuner(MeterRegistry registry, IstioService istioService,
+                                EnableIstioAnnotationProcessor processor, ApplicationStartupListener listener,
+                                IstioProperties.AdaptiveTimeoutProperties properties) {
+        this.requests = new RequestWindow(registry);
+        this.istioService = istioService;
+        this.processor = processor;
+        this.listener = listener;
+        this.properties = properties;
+        this.workQueue = IstioSchedulers.singleThread("istio-adaptive-timeout");
+        workQueue.scheduleWithFixedDelay(this::run, properties.getInterval(), properties.getInterval(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        workQueue.shutdownNow();
+    }
+
+    private void run() {
+        try {
+            tune();
+        } catch (RuntimeException e) {
+            LOGGER.error("Tuning Istio timeouts failed", e);
+        }
+    }
+
+    void tune() {
+        List<EnableIstio> declarations = listener.getDeclarations();
+        if (declarations.isEmpty())
+            return;
+        Latency latency = measure();
+        if (latency == null)
+            return;
+        int retries = istioService.resolveAll(declarations).get(0).numberOfRetries();
+        TimeoutOverride derived = derive(latency.p99(), latency.p999(), retries, properties);
+        // each replica measures its own requests, so the timeouts are compared with those applied on the route
+        Optional<TimeoutOverride> live = processor.getRouteTimeouts(declarations);
+        if (live.isPresent() && live.get().timeout() > 0 && !exceeds(live.get().timeout(), derived.timeout())
+                && (retries == 0 || !exceeds(live.get().perTryTimeout(), derived.perTryTimeout()))) {
+            LOGGER.debug("Istio timeouts within hysteresis: p99={}ms, p99.9={}ms", latency.p99(), latency.p999());
+            // later reconciliations of this replica keep the live timeouts instead of the configured ones
+            if (!live.get().equals(istioService.getTimeoutOverride()))
+                istioService.overrideTimeouts(live.get());
+            return;
+        }
+        istioService.overrideTimeouts(derived);
+        processor.patchRoutes(declarations);
+        LOGGER.info("Istio timeouts adapted to p99={}ms, p99.9={}ms: timeout={}ms, perTryTimeout={}ms",
+                latency.p99(), latency.p999(), derived.timeout(), derived.perTryTimeout());
+    }
+
+    /**
+     * Computes the timeouts with the configured headroom, rounded up and kept within the bounds
+     * @param p99 99th percentile of the latency in milliseconds
+     * @param p999 99.9th percentile of the latency in milliseconds
+     * @param retries number of retries of the route, each of them follows the first attempt
+     * @param properties adaptive timeout settings
+     * @return per-try timeout covering p99 and route timeout covering p99.9 and all attempts
+     */
+    public static TimeoutOverride derive(double p99, double p999, int retries,
+                                         IstioProperties.AdaptiveTimeoutProperties properties) {
+        double factor = 1 + properties.getHeadroom();
+        long perTryTimeout = bound(p99 * factor, properties);
+        long timeout = bound(Math.max(p999 * factor, (double) perTryTimeout * (retries + 1)), properties);
+        return new TimeoutOverride(timeout, Math.min(perTryTimeout, timeout));
+    }
+
+    /**
+     * Finds the quantile in a histogram
+     * @param buckets cumulative counts by the upper bound of the bucket in milliseconds
+     * @param total number of samples
+     * @param quantile quantile between 0 and 1
+     * @return upper bound of the bucket containing the quantile, the largest bound if it is beyond the histogram
+     */
+    public static double quantile(Map<Double, Double> buckets, double total, double quantile) {
+        double rank = quantile * total;
+        double bound = 0;
+        for (Map.Entry<Double, Double> bucket : new TreeMap<>(buckets).entrySet()) {
+            bound = bucket.getKey();
+            if (bucket.getValue() >= rank)
+                return bound;
+        }
+        return bound;
+    }
+
+    // timeouts of a second and more are written in whole seconds, so they are rounded up to keep the headroom,
+    // and bounds that are not whole seconds are rounded inwards, so the written timeout stays within them
+    private static long bound(double millis, IstioProperties.AdaptiveTimeoutProperties properties) {
+        long rounded = millis < 1000 ? (long) Math.ceil(millis / 10) * 10 : (long) Math.ceil(millis / 1000) * 1000;
+        long min = wholeSeconds(properties.getMinTimeout(), true);
+        long max = wholeSeconds(properties.getMaxTimeout(), false);
+        return Math.min(max, Math.max(min, rounded));
+    }
+
+    private static long wholeSeconds(long millis, boolean up) {
+        if (millis < 1000)
+            return millis;
+        return (up ? (millis + 999) / 1000 : millis / 1000) * 1000;
+    }
+
+    private boolean exceeds(long current, long derived) {
+        return Math.abs(derived - current) > properties.getHysteresis() * current;
+    }
+
+    private Latency measure() {
+        RequestWindow.Snapshot window = requests.next();
+        if (window.samples() < properties.getMinSamples()) {
+            LOGGER.debug("Not enough requests to tune Istio timeouts: {}", window.samples());
+            return null;
+        }
+        if (!window.buckets().isEmpty())
+            return new Latency(quantile(window.buckets(), window.samples(), 0.99),
+                    quantile(window.buckets(), window.samples(), 0.999));
+        if (window.p99() > 0 && window.p999() > 0)
+            return new Latency(window.p99(), window.p999());
+        if (!histogramMissingReported) {
+            histogramMissingReported = true;
+            LOGGER.warn("No latency histogram of {}, set management.metrics.distribution.percentiles-histogram.{}=true",
+                    RequestWindow.METRIC, RequestWindow.METRIC);
+        }
+        return null;
+    }
+
+    private record Latency(double p99, double p999) {
+    }
+}
@@ -0,0 +1,176 @@
+package com.github.piomin.springboot.istio.metrics;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.config.IstioProperties;
+import com.github.piomin.springboot.istio.processor.ApplicationStartupListener;
+import com.github.piomin.springboot.istio.processor.EnableIstioAnnotationProcessor;
+import com.github.piomin.springboot.istio.processor.IstioSchedulers;
+import com.github.piomin.springboot.istio.service.IstioService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shifts traffic to the version of the application through the configured weights, e.g. 5, 25, 50 and 100.
+ * The version joins the routes without traffic, each step is patched once the requests served with the previous one
+ * kept p99 latency and the rate of server errors measured by {@code http.server.requests} within the budget.
+ * A breach of the budget rolls the weight back to 0 and stops the rollout. The rollback is marked on the VirtualService,
+ * so the rollout stops on all replicas of the version, also after a restart.
+ */
+public class CanaryController implements AutoCloseable {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(CanaryController.class);
+    private final RequestWindow requests;
+    private final IstioService istioService;
+    private final EnableIstioAnnotationProcessor processor;
+    private final ApplicationStartupListener listener;
+    private final IstioProperties.CanaryProperties properties;
+    private final ScheduledExecutorService workQueue;
+    private int step = -1;
+    private boolean rollingBack;
+    private boolean histogramMissingReported;
+
+    public CanaryController(MeterRegistry registry, IstioService istioService,
+                            EnableIstioAnnotationProcessor processor, ApplicationStartupListener listener,
+                            IstioProperties.CanaryProperties properties) {
+        checkSteps(properties.getSteps());
+        this.requests = new RequestWindow(registry);
+        this.istioService = istioService;
+        this.processor = processor;
+        this.listener = listener;
+        this.properties = properties;
+        // created before the startup reconciliation, so the version is added to the routes with weight 0
+        istioService.overrideWeight(0);
+        this.workQueue = IstioSchedulers.singleThread("istio-canary");
+        workQueue.scheduleWithFixedDelay(this::run, properties.getInterval(), properties.getInterval(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        workQueue.shutdownNow();
+    }
+
+    private void run() {
+        try {
+            advance();
+        } catch (RuntimeException e) {
+            LOGGER.error("Canary rollout step failed", e);
+        }
+    }
+
+    /**
+     * Runs a single step of the rollout, called by the scheduler on each interval
+     */
+    public void advance() {
+        if (workQueue.isShutdown())
+            return;
+        List<EnableIstio> declarations = listener.getDeclarations();
+        if (declarations.isEmpty())
+            return;
+        if (istioService.resolveAll(declarations).get(0).version().isEmpty()) {
+            LOGGER.warn("Canary rollout requires the version of the application, stopped");
+            workQueue.shutdown();
+            return;
+        }
+        if (rollingBack) {
+            rollback(declarations);
+            return;
+        }
+        // the rollback of any replica, also of an earlier run of the same version, stops the rollout
+        if (processor.isRolledBack(declarations)) {
+            LOGGER.warn("Canary rollout of the version was rolled back, stopped");
+            istioService.overrideWeight(0);
+            workQueue.shutdown();
+            return;
+        }
+        if (step == -1) {
+            shift(declarations, 0);
+            return;
+        }
+        RequestWindow.Snapshot window = requests.measure();
+        if (window.samples() < properties.getMinSamples()) {
+            LOGGER.debug("Not enough requests to evaluate canary step {}%: {}",
+                    properties.getSteps().get(step), window.samples());
+            return;
+        }
+        double p99 = !window.buckets().isEmpty() ?
+                AdaptiveTimeoutTuner.quantile(window.buckets(), window.samples(), 0.99) : window.p99();
+        if (p99 == 0) {
+            if (!histogramMissingReported) {
+                histogramMissingReported = true;
+                LOGGER.warn("No latency histogram of {}, canary rollout on hold until "
+                        + "management.metrics.distribution.percentiles-histogram.{}=true",
+                        RequestWindow.METRIC, RequestWindow.METRIC);
+            }
+            return;
+        }
+        Optional<String> breach = checkBudget(p99, window.errorRate(), properties);
+        if (breach.isPresent()) {
+            LOGGER.warn("Canary step {}% out of budget: {}, rolling back", properties.getSteps().get(step),
+                    breach.get());
+            rollingBack = true;
+            istioService.overrideWeight(0);
+            rollback(declarations);
+        } else if (step == properties.getSteps().size() - 1) {
+            LOGGER.info("Canary rollout completed at {}%: p99={}ms, error rate={}", properties.getSteps().get(step),
+                    p99, window.errorRate());
+            workQueue.shutdown();
+        } else {
+            LOGGER.info("Canary step {}% within budget: p99={}ms, error rate={}", properties.getSteps().get(step),
+                    p99, window.errorRate());
+            shift(declarations, step + 1);
+        }
+    }
+
+    // retried on each tick until it succeeds, the rollout never steps forward in the meantime
+    private void rollback(List<EnableIstio> declarations) {
+        processor.rollbackWeight(declarations);
+        LOGGER.info("Canary rollout rolled back");
+        workQueue.shutdown();
+    }
+
+    // the weight stays unchanged if the patch fails, so the step is retried on the next tick
+    private void shift(List<EnableIstio> declarations, int next) {
+        Integer previous = istioService.getWeightOverride();
+        istioService.overrideWeight(properties.getSteps().get(next));
+        try {
+            processor.patchWeight(declarations);
+        } catch (RuntimeException e) {
+            istioService.overrideWeight(previous);
+            throw e;
+        }
+        step = next;
+        requests.measure();
+        requests.mark();
+    }
+
+    /**
+     * Compares the latency and errors of the requests served by the version with the budget
+     * @param p99 99th percentile of the latency in milliseconds
+     * @param errorRate share of requests failed with a server error
+     * @param properties canary settings
+     * @return description of the breach, empty if within the budget
+     */
+    public static Optional<String> checkBudget(double p99, double errorRate, IstioProperties.CanaryProperties properties) {
+        if (p99 > properties.getMaxLatency())
+            return Optional.of("p99=" + p99 + "ms above " + properties.getMaxLatency() + "ms");
+        if (errorRate > properties.getMaxErrorRate())
+            return Optional.of("error rate=" + errorRate + " above " + properties.getMaxErrorRate());
+        return Optional.empty();
+    }
+
+    private static void checkSteps(List<Integer> steps) {
+        boolean valid = !steps.isEmpty();
+        for (int i = 0; valid && i < steps.size(); i++)
+            valid = steps.get(i) > 0 && steps.get(i) <= 100 && (i == 0 || steps.get(i) > steps.get(i - 1));
+        if (!valid)
+            throw new IllegalArgumentException("Invalid Istio configuration: canary steps must be increasing weights "
+                    + "between 1 and 100, were " + steps);
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.piomin.springboot.istio.metrics;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.github.piomin.springboot.istio.processor.ReconcileMetrics;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Publishes the reconciliation measurements to Micrometer.
+ */
+public class MicrometerReconcileMetrics implements ReconcileMetrics {
+
+    static final String API_CALLS = "istio.reconcile.api.calls";
+    static final String SKIPS = "istio.reconcile.skips";
+    static final String CONFLICTS = "istio.reconcile.conflicts";
+    static final String ERRORS = "istio.reconcile.errors";
+    static final String LAST_SUCCESS_AGE = "istio.reconcile.last.success.age";
+    static final String THROTTLE_WAIT = "istio.client.throttle.wait";
+
+    private final MeterRegistry registry;
+    private volatile long lastSuccess;
+
+    public MicrometerReconcileMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder(LAST_SUCCESS_AGE, this, MicrometerReconcileMetrics::getLastSuccessAge)
+                .description("Time since the last successful reconciliation of Istio resources")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    @Override
+    public <T> T record(String kind, String operation, Supplier<T> call) {
+        Timer.Sample sample = Timer.start(registry);
+        try {
+            return call.get();
+        } catch (KubernetesClientException e) {
+            // conflicts are reported separately, since they are retried
+            if (e.getCode() != HttpURLConnection.HTTP_CONFLICT)
+                error(kind, operation);
+            throw e;
+        } catch (RuntimeException e) {
+            error(kind, operation);
+            throw e;
+        } finally {
+            sample.stop(timer(kind, operation));
+        }
+    }
+
+    @Override
+    public void skipped(String kind, long duration) {
+        timer(kind, "skip").record(duration, TimeUnit.NANOSECONDS);
+        Counter.builder(SKIPS)
+                .description("Writes skipped, because the resource is up-to-date")
+                .tag("kind", kind)
+                .register(registry)
+                .increment();
+    }
+
+    @Override
+    public void conflict(String kind) {
+        Counter.builder(CONFLICTS)
+                .description("Writes rejected with an optimistic-concurrency conflict")
+                .tag("kind", kind)
+                .register(registry)
+                .increment();
+    }
+
+    @Override
+    public void throttled(long duration) {
+        Timer.builder(THROTTLE_WAIT)
+                .description("Time Kubernetes API calls waited for the client-side request budget")
+                .register(registry)
+                .record(duration, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void reconciled() {
+        lastSuccess = System.currentTimeMillis();
+    }
+
+    private void error(String kind, String operation) {
+        Counter.builder(ERRORS)
+                .description("Failed Kubernetes API calls")
+                .tag("kind", kind)
+                .tag("operation", operation)
+                .register(registry)
+                .increment();
+    }
+
+    private Timer timer(String kind, String operation) {
+        return Timer.builder(API_CALLS)
+                .description("Kubernetes API calls made while reconciling Istio resources")
+                .tag("kind", kind)
+                .tag("operation", operation)
+                .register(registry);
+    }
+
+    private double getLastSuccessAge() {
+        long last = lastSuccess;
+        return last == 0 ? Double.NaN : (System.currentTimeMillis() - last) / 1000.0;
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.piomin.springboot.istio.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+/**
+ * Requests of the application measured by {@code http.server.requests} since the window was last marked.
+ */
+class RequestWindow {
+
+    static final String METRIC = "http.server.requests";
+
+    private final MeterRegistry registry;
+    private Map<Double, Double> previousBuckets = Map.of();
+    private double previousCount;
+    private double previousErrors;
+    private Map<Double, Double> lastBuckets = Map.of();
+    private double lastCount;
+    private double lastErrors;
+
+    RequestWindow(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @return requests since the previous call, the next window starts now
+     */
+    Snapshot next() {
+        Snapshot snapshot = measure();
+        mark();
+        return snapshot;
+    }
+
+    /**
+     * Starts the next window with the requests of the last {@link #measure()}
+     */
+    void mark() {
+        previousCount = lastCount;
+        previousErrors = lastErrors;
+        previousBuckets = lastBuckets;
+    }
+
+    /**
+     * @return requests since the window was marked, the window keeps growing until it is marked again
+     */
+    Snapshot measure() {
+        Map<Double, Double> buckets = new TreeMap<>();
+        double count = 0;
+        double errors = 0;
+        double p99 = 0;
+        double p999 = 0;
+        for (Timer timer : registry.find(METRIC).timers()) {
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            count += snapshot.count();
+            if (isServerError(timer.getId()))
+                errors += snapshot.count();
+            for (CountAtBucket bucket : snapshot.histogramCounts())
+                buckets.merge(bucket.bucket(TimeUnit.MILLISECONDS), bucket.count(), Double::sum);
+            // percentiles of different timers cannot be merged, the highest one is the safe choice
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                if (percentile.percentile() == 0.99)
+                    p99 = Math.max(p99, percentile.value(TimeUnit.MILLISECONDS));
+                else if (percentile.percentile() == 0.999)
+                    p999 = Math.max(p999, percentile.value(TimeUnit.MILLISECONDS));
+            }
+        }
+        // cumulative counts may be reset, e.g. by step registries, then the whole snapshot is the window
+        boolean reset = count < previousCount || errors < previousErrors || buckets.entrySet().stream()
+                .anyMatch(bucket -> bucket.getValue() < previousBuckets.getOrDefault(bucket.getKey(), 0.0));
+        Map<Double, Double> window = new TreeMap<>(buckets);
+        if (!reset)
+            window.replaceAll((bound, value) -> value - previousBuckets.getOrDefault(bound, 0.0));
+        lastCount = count;
+        lastErrors = errors;
+        lastBuckets = buckets;
+        return new Snapshot(reset ? count : count - previousCount, reset ? errors : errors - previousErrors,
+                window, p99, p999);
+    }
+
+    private boolean isServerError(Meter.Id id) {
+        String outcome = id.getTag("outcome");
+        if (outcome != null)
+            return outcome.equals("SERVER_ERROR");
+        String status = id.getTag("status");
+        return status != null && status.startsWith("5");
+    }
+
+    /**
+     * @param samples number of requests in the window
+     * @param errors number of requests failed with a server error
+     * @param buckets cumulative counts of the window by the upper bound of the bucket in milliseconds,
+     *                empty if the histogram is not published
+     * @param p99 highest client-side 99th percentile of the timers in milliseconds, 0 if not published
+     * @param p999 highest client-side 99.9th percentile of the timers in milliseconds, 0 if not published
+     */
+    record Snapshot(double samples, double errors, Map<Double, Double> buckets, double p99, double p999) {
+
+        double errorRate() {
+            return samples == 0 ? 0 : errors / samples;
+        }
+    }
+}
@@ -1,31 +1,141 @@
 package com.github.piomin.springboot.istio.processor;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.config.IstioProperties;
+import com.github.piomin.springboot.istio.index.EnableIstioIndex;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.util.ClassUtils;
 
 public class ApplicationStartupListener implements
         ApplicationListener<ContextRefreshedEvent> {
 
-    private ApplicationContext context;
-    private EnableIstioAnnotationProcessor processor;
+    private final Logger LOGGER = LoggerFactory.getLogger(ApplicationStartupListener.class);
+    private final CompletableFuture<Void> reconciliation = new CompletableFuture<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile List<EnableIstio> declarations = List.of();
+
+    private final ApplicationContext context;
+    private final EnableIstioAnnotationProcessor processor;
+    private final IstioProperties properties;
+    private final IstioResourceCache resourceCache;
+    private final VersionPruner versionPruner;
 
     public ApplicationStartupListener(ApplicationContext context,
                                       EnableIstioAnnotationProcessor processor) {
+        this(context, processor, null, null, null);
+    }
+
+    /**
+     * @param context application context declaring the {@code @EnableIstio} beans
+     * @param processor processor reconciling the Istio resources
+     * @param properties properties of the reconciliation, null for the defaults
+     * @param resourceCache cache started after the startup reconciliation, null if resources are not watched
+     * @param versionPruner pruner started after the startup reconciliation, null if pruning is disabled
+     */
+    public ApplicationStartupListener(ApplicationContext context,
+                                      EnableIstioAnnotationProcessor processor,
+                                      IstioProperties properties,
+                                      IstioResourceCache resourceCache,
+                                      VersionPruner versionPruner) {
         this.context = context;
         this.processor = processor;
+        this.properties = properties;
+        this.resourceCache = resourceCache;
+        this.versionPruner = versionPruner;
     }
 
     @Override
     public void onApplicationEvent(ContextRefreshedEvent contextRefreshedEvent) {
-        Optional<EnableIstio> annotation =
-                context.getBeansWithAnnotation(EnableIstio.class).keySet().stream()
-                        .map(key -> context.findAnnotationOnBean(key, EnableIstio.class))
-                        .findFirst();
-        annotation.ifPresent(enableIstio -> processor.process(enableIstio));
+        if (!started.compareAndSet(false, true))
+            return;
+        // sorted by bean name, so conflicts between declarations are reported the same way on every start
+        List<EnableIstio> annotations = findDeclaringBeans().stream()
+                .sorted()
+                .map(name -> context.findAnnotationOnBean(name, EnableIstio.class))
+                .toList();
+        if (annotations.isEmpty()) {
+            reconciliation.complete(null);
+            return;
+        }
+        if (properties != null && !properties.getReconcile().isEnabled()) {
+            LOGGER.info("Istio reconciliation disabled, resources are expected to be applied from the generated manifests");
+            reconciliation.complete(null);
+            return;
+        }
+        declarations = annotations;
+        if (properties != null && properties.getReconcile().isAsync()) {
+            processor.processAsync(annotations, properties.getReconcile().getTimeout())
+                    .whenComplete((result, ex) -> {
+                        startWatching(annotations);
+                        if (ex != null) {
+                            LOGGER.error("Istio reconciliation failed", ex);
+                            reconciliation.completeExceptionally(ex);
+                        } else {
+                            reconciliation.complete(null);
+                        }
+                    });
+        } else {
+            try {
+                processor.reconcile(annotations);
+                reconciliation.complete(null);
+            } catch (RuntimeException e) {
+                reconciliation.completeExceptionally(e);
+                throw e;
+            } finally {
+                startWatching(annotations);
+            }
+        }
+    }
+
+    // started after the startup reconciliation, so a drift reconciliation never runs concurrently with it
+    private void startWatching(List<EnableIstio> annotations) {
+        if (resourceCache != null)
+            resourceCache.start(processor.isGatewayEnabled(annotations), () -> processor.reconcile(annotations));
+        if (versionPruner != null)
+            versionPruner.start(() -> processor.reconcile(annotations));
+    }
+
+    private List<String> findDeclaringBeans() {
+        if (properties == null || !properties.isUseIndex())
+            return Arrays.asList(context.getBeanNamesForAnnotation(EnableIstio.class));
+        Optional<List<String>> index = EnableIstioIndex.load(context.getClassLoader());
+        if (index.isEmpty()) {
+            LOGGER.warn("{} not found, searching for the @EnableIstio beans", EnableIstioIndex.LOCATION);
+            return Arrays.asList(context.getBeanNamesForAnnotation(EnableIstio.class));
+        }
+        // the index lists only classes compiled with the indexer, annotated @Bean methods are not in it
+        return index.get().stream()
+                .filter(name -> ClassUtils.isPresent(name, context.getClassLoader()))
+                .map(name -> ClassUtils.resolveClassName(name, context.getClassLoader()))
+                .flatMap(type -> Arrays.stream(context.getBeanNamesForType(type, true, false)))
+                .distinct()
+                .toList();
+    }
+
+    /**
+     * Outcome of the startup reconciliation of Istio resources.
+     * In async mode the application starts in parallel, so other beans may await this future.
+     * @return future completed once the reconciliation finishes
+     */
+    public CompletableFuture<Void> getReconciliation() {
+        return reconciliation;
+    }
+
+    /**
+     * @return the processed annotations sorted by bean name, empty before the startup or if Istio is not enabled
+     */
+    public List<EnableIstio> getDeclarations() {
+        return declarations;
     }
 }
@@ -1,11 +1,36 @@
 package com.github.piomin.springboot.istio.processor;
 
-import java.util.Arrays;
+import java.net.HttpURLConnection;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.config.IstioProperties;
+import com.github.piomin.springboot.istio.service.IstioConfig;
 import com.github.piomin.springboot.istio.service.IstioService;
+import com.github.piomin.springboot.istio.service.TimeoutOverride;
 import io.fabric8.istio.api.api.networking.v1alpha3.*;
 import io.fabric8.istio.api.networking.v1beta1.*;
 import io.fabric8.istio.api.networking.v1beta1.DestinationRule;
@@ -15,148 +40,876 @@ import io.fabric8.istio.api.networking.v1beta1.GatewayBuilder;
 import io.fabric8.istio.api.networking.v1beta1.VirtualService;
 import io.fabric8.istio.api.networking.v1beta1.VirtualServiceBuilder;
 import io.fabric8.istio.client.IstioClient;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.KubernetesClientException;
 import io.fabric8.kubernetes.client.utils.Serialization;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-
-import static org.apache.commons.lang3.time.DurationFormatUtils.formatDuration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 
 public class EnableIstioAnnotationProcessor {
 
+    /**
+     * Prefix of the VirtualService annotation marking the rolled back canary rollout of a version
+     */
+    public static final String CANARY_ROLLBACK_ANNOTATION = "istio.piomin.github.com/canary-rollback-";
+    private static final int DEFAULT_CONFLICT_RETRIES = 5;
+    private static final long DEFAULT_CONFLICT_BACKOFF = 100;
+    private static final long MAX_CONFLICT_BACKOFF = 5000;
+    private static final String MISSING_RESOURCE = "resource does not exist";
+    private static final Pattern DURATION = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|s|m|h)");
+
     private final Logger LOGGER = LoggerFactory.getLogger(EnableIstioAnnotationProcessor.class);
     private final IstioClient istioClient;
     private final IstioService istioService;
+    private final SimpleAsyncTaskExecutor taskExecutor;
+    private volatile ReconcileSummary lastReconcile;
 
+    private final IstioProperties properties;
+    private final IstioResourceCache resourceCache;
+    private final IstioLeaderElection leaderElection;
+    private final RequestBudget requestBudget;
+    private final VersionPruner versionPruner;
+    private final ReconcileMetrics metrics;
+
+    @Autowired
     public EnableIstioAnnotationProcessor(IstioClient istioClient, IstioService istioService) {
+        this(istioClient, istioService, null);
+    }
+
+    /**
+     * Creates the processor outside of the application context
+     * @param istioClient client of the Istio API
+     * @param istioService service resolving the configuration
+     * @param properties properties of the reconciliation
+     */
+    public EnableIstioAnnotationProcessor(IstioClient istioClient, IstioService istioService, IstioProperties properties) {
+        this(istioClient, istioService, properties, null, null, null, null, null);
+    }
+
+    /**
+     * Creates the processor with the optional features enabled by {@code istio.spring.*} properties
+     * @param istioClient client of the Istio API
+     * @param istioService service resolving the configuration
+     * @param properties properties of the reconciliation, null for the defaults
+     * @param resourceCache cache of the watched resources, null if resources are not watched
+     * @param leaderElection leader election, null if every replica reconciles
+     * @param requestBudget budget of API calls, null if calls are not limited
+     * @param versionPruner pruner of retired versions, null if pruning is disabled
+     * @param metrics reconciliation metrics, null if not recorded
+     */
+    public EnableIstioAnnotationProcessor(IstioClient istioClient, IstioService istioService, IstioProperties properties,
+                                          IstioResourceCache resourceCache, IstioLeaderElection leaderElection,
+                                          RequestBudget requestBudget, VersionPruner versionPruner,
+                                          ReconcileMetrics metrics) {
         this.istioClient = istioClient;
         this.istioService = istioService;
+        this.properties = properties;
+        this.resourceCache = resourceCache;
+        this.leaderElection = leaderElection;
+        this.requestBudget = requestBudget;
+        this.versionPruner = versionPruner;
+        this.metrics = metrics != null ? metrics : ReconcileMetrics.NOOP;
+        this.taskExecutor = new SimpleAsyncTaskExecutor("istio-reconcile-");
+        // virtual threads are available starting from JDK 21, older runtimes fall back to platform threads
+        this.taskExecutor.setVirtualThreads(Runtime.version().feature() >= 21);
+    }
+
+    /**
+     * Runs {@link #reconcile(List)} in the background.
+     * The reconciliation is interrupted once the deadline passes, so no further write is started.
+     * @param enableIstioAnnotations annotations to process
+     * @param timeout deadline in milliseconds (0 means no deadline)
+     * @return future completed once the Istio resources are reconciled
+     */
+    public CompletableFuture<Void> processAsync(List<EnableIstio> enableIstioAnnotations, long timeout) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Future<?> task = taskExecutor.submit(() -> {
+            try {
+                reconcile(enableIstioAnnotations);
+                future.complete(null);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        if (timeout > 0) {
+            // orTimeout only completes the future, the task keeps running until it is interrupted
+            future.orTimeout(timeout, TimeUnit.MILLISECONDS).whenComplete((result, e) -> {
+                if (e instanceof TimeoutException)
+                    task.cancel(true);
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Processes the annotations, or waits for the lease holder when leader election is enabled
+     * @param enableIstioAnnotations annotations to process
+     */
+    public void reconcile(List<EnableIstio> enableIstioAnnotations) {
+        if (leaderElection != null) {
+            leaderElection.run(istioService.resolveAll(enableIstioAnnotations).get(0).version(),
+                    computeDesiredHash(enableIstioAnnotations),
+                    () -> process(enableIstioAnnotations));
+        } else {
+            process(enableIstioAnnotations);
+        }
+    }
+
+    /**
+     * Computes the hash of all resources the application contributes to
+     * @param enableIstioAnnotations annotations to process
+     * @return hash of the desired state
+     */
+    public String computeDesiredHash(List<EnableIstio> enableIstioAnnotations) {
+        List<IstioConfig> configs = istioService.resolveAll(enableIstioAnnotations);
+        List<Object> specs = new ArrayList<>();
+        specs.add(buildDestinationRule(configs.get(0)).getSpec());
+        specs.add(buildVirtualService(configs).getSpec());
+        if (configs.get(0).enableGateway())
+            specs.add(buildGateway(configs.get(0)).getSpec());
+        return SpecHash.of(specs);
     }
 
     public void process(EnableIstio enableIstioAnnotation) {
-        LOGGER.info("Istio feature enabled: {}", enableIstioAnnotation);
+        process(List.of(enableIstioAnnotation));
+    }
+
+    /**
+     * Reconciles Istio resources, merging all annotations into a single write per resource
+     * @param enableIstioAnnotations annotations to process, each of them becomes a separate HTTP route
+     */
+    public void process(List<EnableIstio> enableIstioAnnotations) {
+        LOGGER.info("Istio feature enabled: {}", enableIstioAnnotations);
+        long start = System.currentTimeMillis();
+        AtomicInteger conflictRetries = new AtomicInteger();
+        Map<String, Long> durations = new ConcurrentHashMap<>();
+        try {
+            List<IstioConfig> configs = istioService.resolveAll(enableIstioAnnotations);
+            if (isServerSideApply())
+                processServerSideApply(configs, durations);
+            else
+                processReadModifyWrite(configs, conflictRetries, durations);
+        } catch (RuntimeException e) {
+            lastReconcile = new ReconcileSummary(Instant.now(), System.currentTimeMillis() - start,
+                    Map.copyOf(durations), conflictRetries.get(), e.getMessage());
+            throw e;
+        }
+        lastReconcile = new ReconcileSummary(Instant.now(), System.currentTimeMillis() - start,
+                Map.copyOf(durations), conflictRetries.get(), null);
+        metrics.reconciled();
+        LOGGER.info("Istio resources reconciled in {} ms after {} conflict retries",
+                lastReconcile.duration(), lastReconcile.conflictRetries());
+    }
+
+    /**
+     * Updates only the routes of the VirtualService, sending a JSON patch with the changed fields.
+     * Falls back to {@link #reconcile(List)} when resources are server-side applied or leader election is enabled.
+     * @param enableIstioAnnotations annotations to process
+     */
+    public void patchRoutes(List<EnableIstio> enableIstioAnnotations) {
+        if (isServerSideApply() || leaderElection != null) {
+            reconcile(enableIstioAnnotations);
+            return;
+        }
+        List<IstioConfig> configs = istioService.resolveAll(enableIstioAnnotations);
+        VirtualService updated = call("VirtualService", "patch", () -> istioClient.v1beta1().virtualServices()
+                .withName(istioService.getVirtualServiceName())
+                .edit(vs -> {
+                    applyVirtualServiceChanges(configs, vs);
+                    // on startup the settings of a route shared by versions are kept, a runtime change is explicit
+                    configs.forEach(config -> findOwnRoute(vs.getSpec().getHttp(), config, configs.size() > 1)
+                            .ifPresent(route -> applyRouteSettings(config, route)));
+                    updateSpecHash(vs, vs.getSpec());
+                    return vs;
+                }));
+        LOGGER.info("VirtualService routes patched: {}", updated.getMetadata().getName());
+        logYaml(updated);
+    }
+
+    /**
+     * Shifts traffic to the version, sending a JSON patch with only the weights of the destinations in its routes.
+     * The other destinations of a route share the rest of the traffic in the proportion of their current weights.
+     * With leader election enabled, only the lease holder of the version sends the patch.
+     * @param enableIstioAnnotations annotations to process
+     */
+    public void patchWeight(List<EnableIstio> enableIstioAnnotations) {
+        List<IstioConfig> configs = istioService.resolveAll(enableIstioAnnotations);
+        Runnable patch = () -> editWeight(configs, vs -> {});
+        if (leaderElection != null)
+            leaderElection.run(configs.get(0).version(), computeDesiredHash(enableIstioAnnotations), patch);
+        else
+            patch.run();
+    }
+
+    /**
+     * Shifts all traffic away from the version and marks the rollback on the VirtualService,
+     * so the rollout stops on every replica. Sent by any replica, also with leader election enabled.
+     * @param enableIstioAnnotations annotations to process, resolved with weight 0
+     */
+    public void rollbackWeight(List<EnableIstio> enableIstioAnnotations) {
+        List<IstioConfig> configs = istioService.resolveAll(enableIstioAnnotations);
+        editWeight(configs, vs -> {
+            if (vs.getMetadata().getAnnotations() == null)
+                vs.getMetadata().setAnnotations(new HashMap<>());
+            vs.getMetadata().getAnnotations().put(CANARY_ROLLBACK_ANNOTATION + configs.get(0).version(),
+                    Instant.now().toString());
+        });
+    }
+
+    /**
+     * Checks whether the rollout of the version was rolled back by any replica
+     * @param enableIstioAnnotations annotations to process
+     * @return true if the VirtualService is marked with the rollback of the version
+     */
+    public boolean isRolledBack(List<EnableIstio> enableIstioAnnotations) {
+        String version = istioService.resolveAll(enableIstioAnnotations).get(0).version();
+        VirtualService vs = getVirtualService();
+        return vs != null && vs.getMetadata().getAnnotations() != null
+                && vs.getMetadata().getAnnotations().containsKey(CANARY_ROLLBACK_ANNOTATION + version);
+    }
 
-        DestinationRule dr = istioClient
+    private void editWeight(List<IstioConfig> configs, Consumer<VirtualService> marker) {
+        VirtualService updated = call("VirtualService", "patch", () -> istioClient.v1beta1().virtualServices()
+                .withName(istioService.getVirtualServiceName())
+                .edit(vs -> {
+                    configs.forEach(config -> findOwnRoute(vs.getSpec().getHttp(), config, configs.size() > 1)
+                            .ifPresent(route -> shiftWeight(route.getRoute(), istioService.buildRouteDestination(config))));
+                    marker.accept(vs);
+                    updateSpecHash(vs, vs.getSpec());
+                    return vs;
+                }));
+        LOGGER.info("VirtualService weight of version {} patched to {}: {}", configs.get(0).version(),
+                configs.get(0).weight(), updated.getMetadata().getName());
+        logYaml(updated);
+    }
+
+    /**
+     * Sets the weight of the destination and gives the rest of the traffic to the other destinations of the route
+     * in the proportion of their current weights, so the weights still sum up to 100
+     * @param destinations destinations of the HTTP route, modified in place
+     * @param destination destination with the weight to set, added if the route does not contain its subset
+     */
+    public static void shiftWeight(List<HTTPRouteDestination> destinations, HTTPRouteDestination destination) {
+        String subset = destination.getDestination().getSubset();
+        List<HTTPRouteDestination> others = destinations.stream()
+                .filter(d -> d.getDestination() == null || !Objects.equals(subset, d.getDestination().getSubset()))
+                .toList();
+        HTTPRouteDestination own = destinations.stream()
+                .filter(d -> d.getDestination() != null && Objects.equals(subset, d.getDestination().getSubset()))
+                .findFirst()
+                .orElseGet(() -> {
+                    destinations.add(destination);
+                    return destination;
+                });
+        // a single destination receives all traffic whatever its weight
+        if (others.isEmpty()) {
+            own.setWeight(null);
+            return;
+        }
+        int weight = destination.getWeight() != null ? destination.getWeight() : 0;
+        own.setWeight(weight);
+        int remaining = 100 - weight;
+        int total = others.stream().mapToInt(d -> d.getWeight() != null ? d.getWeight() : 0).sum();
+        int assigned = 0;
+        for (HTTPRouteDestination other : others) {
+            int current = other.getWeight() != null ? other.getWeight() : 0;
+            int share = total == 0 ? remaining / others.size() : (int) ((long) remaining * current / total);
+            other.setWeight(share);
+            assigned += share;
+        }
+        // the rounding remainder goes to the destination with the most traffic
+        int remainder = remaining - assigned;
+        others.stream()
+                .max(Comparator.comparingInt(HTTPRouteDestination::getWeight))
+                .ifPresent(d -> d.setWeight(d.getWeight() + remainder));
+    }
+
+    private void processReadModifyWrite(List<IstioConfig> configs, AtomicInteger conflictRetries,
+                                        Map<String, Long> durations) {
+        IstioConfig config = configs.get(0);
+        boolean gatewayEnabled = config.enableGateway();
+        Set<String> prunedSubsets = ConcurrentHashMap.newKeySet();
+
+        // reads do not depend on each other, so all of them are sent at once
+        CompletableFuture<DestinationRule> drRead = CompletableFuture
+                .supplyAsync(this::getDestinationRule, taskExecutor);
+        CompletableFuture<VirtualService> vsRead = CompletableFuture
+                .supplyAsync(this::getVirtualService, taskExecutor);
+        CompletableFuture<Gateway> gatewayRead = gatewayEnabled ?
+                CompletableFuture.supplyAsync(this::getGateway, taskExecutor) :
+                CompletableFuture.completedFuture(null);
+
+        CompletableFuture<Void> drWrite = drRead.thenAcceptAsync(dr ->
+                retryOnConflict("DestinationRule", dr, this::fetchDestinationRule, current -> {
+                    if (current == null) {
+                        createNewDestinationRule(config);
+                    } else {
+                        editDestinationRule(config, current, prunedSubsets);
+                    }
+                }, conflictRetries, durations), taskExecutor);
+
+        // the subset has to exist in the DestinationRule before the VirtualService routes to it
+        CompletableFuture<Void> vsWrite = drWrite.thenCombine(vsRead, (ignored, vs) -> vs)
+                .thenAcceptAsync(vs ->
+                        retryOnConflict("VirtualService", vs, this::fetchVirtualService, current -> {
+                            if (current == null) {
+                                createNewVirtualService(configs);
+                            } else {
+                                editVirtualService(configs, current, prunedSubsets);
+                            }
+                        }, conflictRetries, durations), taskExecutor);
+
+        CompletableFuture<Void> gatewayWrite = !gatewayEnabled ?
+                CompletableFuture.completedFuture(null) :
+                gatewayRead.thenAcceptAsync(gateway ->
+                        retryOnConflict("Gateway", gateway, this::fetchGateway, current -> {
+                            if (current == null) {
+                                createNewGateway(config);
+                            } else {
+                                editGateway(config, current);
+                            }
+                        }, conflictRetries, durations), taskExecutor);
+
+        await(drWrite, vsWrite, gatewayWrite);
+    }
+
+    /**
+     * Number of optimistic-concurrency conflicts retried during the last reconciliation
+     * @return number of retries
+     */
+    public int getLastConflictRetries() {
+        ReconcileSummary summary = lastReconcile;
+        return summary != null ? summary.conflictRetries() : 0;
+    }
+
+    /**
+     * Summary of the last reconciliation
+     * @return summary, or null if no reconciliation has finished yet
+     */
+    public ReconcileSummary getLastReconcile() {
+        return lastReconcile;
+    }
+
+    /**
+     * Compares the live resources with the state the application would apply on them
+     * @param enableIstioAnnotations annotations to process
+     * @return field-level changes per resource kind, empty lists if resources are up-to-date
+     */
+    public Map<String, List<String>> computeDrift(List<EnableIstio> enableIstioAnnotations) {
+        Map<String, List<String>> drift = new LinkedHashMap<>();
+        List<IstioConfig> configs = istioService.resolveAll(enableIstioAnnotations);
+        IstioConfig config = configs.get(0);
+        if (!config.version().isEmpty()) {
+            DestinationRule dr = getDestinationRule();
+            if (dr == null) {
+                drift.put("DestinationRule", List.of(MISSING_RESOURCE));
+            } else {
+                DestinationRule desired = new DestinationRuleBuilder(dr).build();
+                applyDestinationRuleChanges(config, desired);
+                drift.put("DestinationRule", SpecDiff.diff(dr.getSpec(), desired.getSpec()));
+            }
+        }
+        VirtualService vs = getVirtualService();
+        if (vs == null) {
+            drift.put("VirtualService", List.of(MISSING_RESOURCE));
+        } else {
+            VirtualService desired = new VirtualServiceBuilder(vs).build();
+            applyVirtualServiceChanges(configs, desired);
+            drift.put("VirtualService", SpecDiff.diff(vs.getSpec(), desired.getSpec()));
+        }
+        if (config.enableGateway()) {
+            Gateway gateway = getGateway();
+            if (gateway == null) {
+                drift.put("Gateway", List.of(MISSING_RESOURCE));
+            } else {
+                Gateway desired = new GatewayBuilder(gateway).build();
+                applyGatewayChanges(config, desired);
+                drift.put("Gateway", SpecDiff.diff(gateway.getSpec(), desired.getSpec()));
+            }
+        }
+        return drift;
+    }
+
+    /**
+     * Reads the timeouts of the live HTTP route of the first annotation
+     * @param enableIstioAnnotations annotations to process
+     * @return timeouts in milliseconds, 0 if not set, empty if the route does not exist
+     */
+    public Optional<TimeoutOverride> getRouteTimeouts(List<EnableIstio> enableIstioAnnotations) {
+        List<IstioConfig> configs = istioService.resolveAll(enableIstioAnnotations);
+        VirtualService vs = getVirtualService();
+        if (vs == null || vs.getSpec().getHttp() == null)
+            return Optional.empty();
+        return findOwnRoute(vs.getSpec().getHttp(), configs.get(0), configs.size() > 1)
+                .map(route -> new TimeoutOverride(parseMillis(route.getTimeout()),
+                        route.getRetries() != null ? parseMillis(route.getRetries().getPerTryTimeout()) : 0));
+    }
+
+    // durations of Istio resources, e.g. 1.5s or 600ms
+    private static long parseMillis(String duration) {
+        if (duration == null)
+            return 0;
+        Matcher matcher = DURATION.matcher(duration.trim());
+        if (!matcher.matches())
+            return 0;
+        double value = Double.parseDouble(matcher.group(1));
+        return Math.round(switch (matcher.group(2)) {
+            case "ms" -> value;
+            case "s" -> value * 1000;
+            case "m" -> value * 60000;
+            default -> value * 3600000;
+        });
+    }
+
+    public boolean isGatewayEnabled(List<EnableIstio> enableIstioAnnotations) {
+        return istioService.resolveAll(enableIstioAnnotations).get(0).enableGateway();
+    }
+
+    public DestinationRule getDestinationRule() {
+        if (resourceCache != null && resourceCache.isStarted())
+            return resourceCache.getDestinationRule();
+        return fetchDestinationRule();
+    }
+
+    private DestinationRule fetchDestinationRule() {
+        return call("DestinationRule", "get", () -> istioClient
                 .v1beta1()
                 .destinationRules()
                 .withName(istioService.getDestinationRuleName())
-                .get();
-        if (dr == null) {
-            createNewDestinationRule(enableIstioAnnotation);
-        } else {
-            editDestinationRule(enableIstioAnnotation, dr);
-        }
+                .get());
+    }
 
-        VirtualService vs = istioClient
+    public VirtualService getVirtualService() {
+        if (resourceCache != null && resourceCache.isStarted())
+            return resourceCache.getVirtualService();
+        return fetchVirtualService();
+    }
+
+    private VirtualService fetchVirtualService() {
+        return call("VirtualService", "get", () -> istioClient
                 .v1beta1()
                 .virtualServices()
                 .withName(istioService.getVirtualServiceName())
-                .get();
-        if (vs == null) {
-            createNewVirtualService(enableIstioAnnotation);
-        } else {
-            editVirtualService(enableIstioAnnotation, vs);
+                .get());
+    }
+
+    public Gateway getGateway() {
+        if (resourceCache != null && resourceCache.isStarted())
+            return resourceCache.getGateway();
+        return fetchGateway();
+    }
+
+    private Gateway fetchGateway() {
+        return call("Gateway", "get", () -> istioClient
+                .v1beta1()
+                .gateways()
+                .withName(istioService.getApplicationName())
+                .get());
+    }
+
+    // an interrupted reconciliation cancels the writes which have not started yet
+    private void await(CompletableFuture<?>... stages) {
+        try {
+            CompletableFuture.allOf(stages).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            for (CompletableFuture<?> stage : stages)
+                stage.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reconciling Istio resources", e);
         }
+    }
 
-        if (istioService.isEnableGateway(enableIstioAnnotation)) {
-            Gateway gateway = istioClient
-                    .v1beta1()
-                    .gateways()
-                    .withName(istioService.getApplicationName())
-                    .get();
-            if (gateway == null) {
-                createNewGateway(enableIstioAnnotation);
+    /**
+     * Writes the resource and retries on optimistic-concurrency conflicts (HTTP 409).
+     * Before each retry the resource is read again, so the edit is applied on top of its latest version.
+     */
+    private <T> void retryOnConflict(String kind, T current, Supplier<T> reader, Consumer<T> writer,
+                                     AtomicInteger conflictRetries, Map<String, Long> durations) {
+        long start = System.currentTimeMillis();
+        int attempt = 0;
+        while (true) {
+            try {
+                writer.accept(current);
+                durations.put(kind, System.currentTimeMillis() - start);
+                return;
+            } catch (KubernetesClientException e) {
+                if (e.getCode() != HttpURLConnection.HTTP_CONFLICT || attempt >= getMaxConflictRetries())
+                    throw e;
+                attempt++;
+                conflictRetries.incrementAndGet();
+                metrics.conflict(kind);
+                long backoff = computeBackoff(attempt);
+                LOGGER.info("{} modified concurrently, retrying in {} ms (attempt {})", kind, backoff, attempt);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                current = reader.get();
+            }
+        }
+    }
+
+    private long computeBackoff(int attempt) {
+        long base = properties != null ? properties.getReconcile().getConflictBackoff() : DEFAULT_CONFLICT_BACKOFF;
+        long backoff = Math.min(base << Math.min(attempt - 1, 16), MAX_CONFLICT_BACKOFF);
+        // jitter spreads replicas started at the same moment
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private int getMaxConflictRetries() {
+        return properties != null ? properties.getReconcile().getConflictRetries() : DEFAULT_CONFLICT_RETRIES;
+    }
+
+    private void processServerSideApply(List<IstioConfig> configs, Map<String, Long> durations) {
+        IstioConfig config = configs.get(0);
+        String fieldManager = getFieldManager(config);
+        CompletableFuture<Void> drApply = CompletableFuture.runAsync(() -> {
+            if (config.version().isEmpty())
+                return;
+            long start = System.currentTimeMillis();
+            DestinationRule dr = apply("DestinationRule", () -> istioClient.v1beta1().destinationRules()
+                    .resource(withSpecHash(buildDestinationRule(config)))
+                    .fieldManager(fieldManager)
+                    .serverSideApply());
+            durations.put("DestinationRule", System.currentTimeMillis() - start);
+            LOGGER.info("DestinationRule applied: {}", dr.getMetadata().getName());
+            logYaml(dr);
+        }, taskExecutor);
+
+        CompletableFuture<Void> vsApply = drApply.thenRunAsync(() -> {
+            long start = System.currentTimeMillis();
+            VirtualService vs = apply("VirtualService", () -> istioClient.v1beta1().virtualServices()
+                    .resource(withSpecHash(buildVirtualService(configs)))
+                    .fieldManager(fieldManager)
+                    .serverSideApply());
+            durations.put("VirtualService", System.currentTimeMillis() - start);
+            LOGGER.info("VirtualService applied: {}", vs.getMetadata().getName());
+            logYaml(vs);
+        }, taskExecutor);
+
+        CompletableFuture<Void> gatewayApply = !config.enableGateway() ?
+                CompletableFuture.completedFuture(null) :
+                CompletableFuture.runAsync(() -> {
+                    long start = System.currentTimeMillis();
+                    Gateway gateway = apply("Gateway", () -> istioClient.v1beta1().gateways()
+                            .resource(withSpecHash(buildGateway(config)))
+                            .fieldManager(fieldManager)
+                            .serverSideApply());
+                    durations.put("Gateway", System.currentTimeMillis() - start);
+                    LOGGER.info("Gateway applied: {}", gateway.getMetadata().getName());
+                    logYaml(gateway);
+                }, taskExecutor);
+
+        await(drApply, vsApply, gatewayApply);
+    }
+
+    // the diff is computed only if it is going to be logged
+    private JsonNode snapshotForLog(Object spec) {
+        return LOGGER.isInfoEnabled() ? SpecDiff.snapshot(spec) : null;
+    }
+
+    private void logYaml(HasMetadata resource) {
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug("{} {}:\n{}", resource.getKind(), resource.getMetadata().getName(), Serialization.asYaml(resource));
+    }
+
+    private <T> T call(String kind, String operation, Supplier<T> call) {
+        if (requestBudget != null)
+            requestBudget.acquire();
+        return metrics.record(kind, operation, call);
+    }
+
+    private boolean isServerSideApply() {
+        return properties != null && properties.getReconcile().isServerSideApply();
+    }
+
+    /**
+     * Applies the resource without forcing conflicts. The lists of Istio resources, e.g. {@code subsets} or
+     * {@code http}, are atomic, so taking them over from another field manager would drop the entries of other versions.
+     */
+    private <T> T apply(String kind, Supplier<T> apply) {
+        try {
+            return call(kind, "apply", apply);
+        } catch (KubernetesClientException e) {
+            if (e.getCode() != HttpURLConnection.HTTP_CONFLICT)
+                throw e;
+            throw new IllegalStateException(kind + " has fields owned by another field manager, "
+                    + "server-side apply supports a single version per resource: " + e.getMessage(), e);
+        }
+    }
+
+    // each version applies as its own manager, so it conflicts with the fields of other versions instead of taking them over
+    private String getFieldManager(IstioConfig config) {
+        if (properties != null && properties.getReconcile().getFieldManager() != null)
+            return properties.getReconcile().getFieldManager();
+        return config.version().isEmpty() ? istioService.getApplicationName()
+                : istioService.getApplicationName() + "-" + config.version();
+    }
+
+    private void createNewDestinationRule(IstioConfig config) {
+        if (config.version().isEmpty())
+            return;
+        DestinationRule desired = buildDestinationRule(config);
+        updateSpecHash(desired, desired.getSpec());
+        DestinationRule dr = call("DestinationRule", "create", () -> istioClient.v1beta1().destinationRules().resource(desired).create());
+        LOGGER.info("New DestinationRule created: {}", dr.getMetadata().getName());
+        logYaml(dr);
+    }
+
+    private void editDestinationRule(IstioConfig config, DestinationRule dr, Set<String> prunedSubsets) {
+        long start = System.nanoTime();
+        LOGGER.debug("Found DestinationRule: {}", dr);
+        if (!config.version().isEmpty()) {
+            String liveHash = SpecHash.of(dr.getSpec());
+            JsonNode before = snapshotForLog(dr.getSpec());
+            applyDestinationRuleChanges(config, dr);
+            // stale subsets are tracked in an annotation, so its change has to be written even if the spec is unchanged
+            boolean pruneChanged = versionPruner != null && versionPruner.prune(dr, config.version(), prunedSubsets);
+            if (!updateSpecHash(dr, dr.getSpec(), liveHash) && !pruneChanged) {
+                metrics.skipped("DestinationRule", System.nanoTime() - start);
+                LOGGER.info("DestinationRule unchanged, skipping update");
+                return;
+            }
+            DestinationRule updated = call("DestinationRule", "update", () -> istioClient.v1beta1().destinationRules().resource(dr).update());
+            if (before != null)
+                LOGGER.info("DestinationRule updated: {}", SpecDiff.diff(before, updated.getSpec()));
+            logYaml(updated);
+        }
+    }
+
+    private void createNewVirtualService(List<IstioConfig> configs) {
+        VirtualService desired = buildVirtualService(configs);
+        updateSpecHash(desired, desired.getSpec());
+        VirtualService vs = call("VirtualService", "create", () -> istioClient.v1beta1().virtualServices().resource(desired).create());
+        LOGGER.info("New VirtualService created: {}", vs.getMetadata().getName());
+        logYaml(vs);
+    }
+
+    private void editVirtualService(List<IstioConfig> configs, VirtualService vs, Set<String> prunedSubsets) {
+        long start = System.nanoTime();
+        LOGGER.debug("Found VirtualService: {}", vs);
+        String liveHash = SpecHash.of(vs.getSpec());
+        JsonNode before = snapshotForLog(vs.getSpec());
+        applyVirtualServiceChanges(configs, vs);
+        VersionPruner.pruneRoutes(vs, prunedSubsets);
+        if (!updateSpecHash(vs, vs.getSpec(), liveHash)) {
+            metrics.skipped("VirtualService", System.nanoTime() - start);
+            LOGGER.info("VirtualService unchanged, skipping update");
+            return;
+        }
+        VirtualService updated = call("VirtualService", "update", () -> istioClient.v1beta1().virtualServices().resource(vs).update());
+        if (before != null)
+            LOGGER.info("VirtualService updated: {}", SpecDiff.diff(before, updated.getSpec()));
+        logYaml(updated);
+    }
+
+    private void createNewGateway(IstioConfig config) {
+        Gateway desired = buildGateway(config);
+        updateSpecHash(desired, desired.getSpec());
+        Gateway gateway = call("Gateway", "create", () -> istioClient.v1beta1().gateways().resource(desired).create());
+        LOGGER.info("New Gateway created: {}", gateway.getMetadata().getName());
+        logYaml(gateway);
+    }
+
+    private void editGateway(IstioConfig config, Gateway gateway) {
+        long start = System.nanoTime();
+        LOGGER.debug("Found Gateway: {}", gateway);
+        String liveHash = SpecHash.of(gateway.getSpec());
+        JsonNode before = snapshotForLog(gateway.getSpec());
+        applyGatewayChanges(config, gateway);
+        if (!updateSpecHash(gateway, gateway.getSpec(), liveHash)) {
+            metrics.skipped("Gateway", System.nanoTime() - start);
+            LOGGER.info("Gateway unchanged, skipping update");
+            return;
+        }
+        Gateway updated = call("Gateway", "update", () -> istioClient.v1beta1().gateways().resource(gateway).update());
+        if (before != null)
+            LOGGER.info("Gateway updated: {}", SpecDiff.diff(before, updated.getSpec()));
+        logYaml(updated);
+    }
+
+    private void applyDestinationRuleChanges(IstioConfig config, DestinationRule dr) {
+        Optional<Subset> subset = dr.getSpec().getSubsets().stream()
+                .filter(s -> s.getName().equals(config.version()))
+                .findAny();
+        if (subset.isEmpty()) {
+            dr.getSpec().getSubsets().add(istioService.buildSubset(config));
+        }
+        dr.getSpec().setTrafficPolicy(istioService.buildCircuitBreaker(config));
+    }
+
+    private void applyVirtualServiceChanges(List<IstioConfig> configs, VirtualService vs) {
+        IstioConfig config = configs.get(0);
+        vs.getSpec().setHosts(List.of(addToHosts(config)));
+        if (config.enableGateway()) {
+            vs.getSpec().setGateways(List.of(istioService.getApplicationName()));
+        }
+        if (configs.size() == 1)
+            applyRouteChanges(config, vs.getSpec().getHttp());
+        else
+            configs.forEach(route -> applyMergedRouteChanges(route, vs.getSpec().getHttp()));
+    }
+
+    private void applyRouteChanges(IstioConfig config, List<HTTPRoute> http) {
+        if (!config.version().isEmpty()) {
+            int index = findDestination(http, config.version());
+            if (index != -1) {
+                http.get(index).getRoute().get(0)
+                        .setWeight(config.weight() == 0 ? null : config.weight());
             } else {
-                editGateway(enableIstioAnnotation, gateway);
+                if (config.weight() == 100)
+                    http.add(istioService.buildRoute(config));
+                else
+                    http.get(0).getRoute()
+                            .add(istioService.buildRouteDestination(config));
             }
+        } else {
+            applyRouteSettings(config, http.get(0));
+            http.get(0).getRoute().get(0).setDestination(istioService.buildDestination(config));
         }
     }
 
-    private void createNewDestinationRule(EnableIstio enableIstioAnnotation) {
-        if (istioService.getVersion(enableIstioAnnotation).isEmpty())
+    // with several annotations, each of them owns the HTTP route with its own matches
+    private void applyMergedRouteChanges(IstioConfig config, List<HTTPRoute> http) {
+        int index = findRoute(http, buildMatches(config));
+        if (index == -1) {
+            // routes are matched in order, so a route after the one without matches would never be reached
+            http.add(findCatchAllRoute(http), istioService.buildRoute(config));
             return;
-        DestinationRule dr = new DestinationRuleBuilder()
+        }
+        HTTPRoute route = http.get(index);
+        if (!config.version().isEmpty()) {
+            Optional<HTTPRouteDestination> destination = route.getRoute().stream()
+                    .filter(d -> d.getDestination() != null && config.version().equals(d.getDestination().getSubset()))
+                    .findFirst();
+            if (destination.isPresent())
+                destination.get().setWeight(config.weight() == 0 ? null : config.weight());
+            else
+                route.getRoute().add(istioService.buildRouteDestination(config));
+        } else {
+            applyRouteSettings(config, route);
+            route.getRoute().get(0).setDestination(istioService.buildDestination(config));
+        }
+    }
+
+    private void applyRouteSettings(IstioConfig config, HTTPRoute route) {
+        route.setTimeout(istioService.buildTimeout(config));
+        route.setRetries(istioService.buildRetry(config));
+        route.setFault(config.faultPercentage() == 0 ? null : istioService.buildFault(config));
+    }
+
+    // the route serving the version, or the one with the matches of the annotation if there are several
+    private Optional<HTTPRoute> findOwnRoute(List<HTTPRoute> http, IstioConfig config, boolean merged) {
+        if (merged) {
+            int index = findRoute(http, buildMatches(config));
+            return index != -1 ? Optional.of(http.get(index)) : Optional.empty();
+        }
+        return http.stream()
+                .filter(route -> config.version() != null && route.getRoute().stream().anyMatch(d -> d.getDestination() != null
+                        && config.version().equals(d.getDestination().getSubset())))
+                .findFirst()
+                .or(() -> http.stream().findFirst());
+    }
+
+    private void applyGatewayChanges(IstioConfig config, Gateway gateway) {
+        if (gateway.getSpec().getServers() != null && !gateway.getSpec().getServers().isEmpty()) {
+            Server server = gateway.getSpec().getServers().get(0);
+            String appHost = istioService.getApplicationName() + "." + config.domain();
+            if (server.getHosts() != null && !server.getHosts().contains(appHost)) {
+                server.getHosts().add(appHost);
+            }
+        }
+    }
+
+    /**
+     * Builds the complete DestinationRule owned by the application
+     * @param enableIstioAnnotations annotations to process
+     * @return desired DestinationRule
+     */
+    public DestinationRule buildDestinationRule(List<EnableIstio> enableIstioAnnotations) {
+        return buildDestinationRule(istioService.resolveAll(enableIstioAnnotations).get(0));
+    }
+
+    private DestinationRule buildDestinationRule(IstioConfig config) {
+        return new DestinationRuleBuilder()
                 .withMetadata(istioService.buildDestinationRuleMetadata())
                 .withNewSpec()
                 .withHost(istioService.getApplicationName())
-                .withSubsets(istioService.buildSubset(enableIstioAnnotation))
-                .withTrafficPolicy(istioService.buildCircuitBreaker(enableIstioAnnotation))
+                .withSubsets(istioService.buildSubset(config))
+                .withTrafficPolicy(istioService.buildCircuitBreaker(config))
                 .endSpec()
                 .build();
-        dr = istioClient.v1beta1().destinationRules().resource(dr).create();
-        LOGGER.info("New DestinationRule created: \n{}", Serialization.asYaml(dr));
-    }
-
-    private void editDestinationRule(EnableIstio enableIstioAnnotation, DestinationRule dr) {
-        LOGGER.info("Found DestinationRule: {}", dr);
-        if (!istioService.getVersion(enableIstioAnnotation).isEmpty()) {
-            Optional<Subset> subset = dr.getSpec().getSubsets().stream()
-                    .filter(s -> s.getName().equals(istioService.getVersion(enableIstioAnnotation)))
-                    .findAny();
-            if (subset.isEmpty()) {
-                dr.getSpec().getSubsets().add(istioService.buildSubset(enableIstioAnnotation));
-            }
-            dr.getSpec().setTrafficPolicy(istioService.buildCircuitBreaker(enableIstioAnnotation));
-            dr = istioClient.v1beta1().destinationRules().resource(dr).update();
-            LOGGER.info("DestinationRule updated: \n{}", Serialization.asYaml(dr));
-        }
     }
 
-    private void createNewVirtualService(EnableIstio enableIstioAnnotation) {
+    /**
+     * Builds the complete VirtualService owned by the application, with an HTTP route per annotation
+     * @param enableIstioAnnotations annotations to process
+     * @return desired VirtualService
+     */
+    public VirtualService buildVirtualService(List<EnableIstio> enableIstioAnnotations) {
+        return buildVirtualService(istioService.resolveAll(enableIstioAnnotations));
+    }
+
+    private VirtualService buildVirtualService(List<IstioConfig> configs) {
+        IstioConfig config = configs.get(0);
         VirtualServiceBuilder vsBuilder = new VirtualServiceBuilder();
         vsBuilder = vsBuilder
                 .withNewMetadata().withName(istioService.getVirtualServiceName()).endMetadata()
                 .withNewSpec()
-                .withHosts(addToHosts(enableIstioAnnotation))
-                .addNewHttp()
-                .withMatch(Arrays.stream(istioService.getMatches(enableIstioAnnotation))
-                        .map(istioService::buildHTTPMatchRequest)
-                        .toArray(HTTPMatchRequest[]::new))
-                .withTimeout(istioService.getTimeout(enableIstioAnnotation) == 0 ? null : formatDuration(istioService.getTimeout(enableIstioAnnotation), "s's'"))
-                .withFault(istioService.getFaultPercentage(enableIstioAnnotation) == 0 ? null : istioService.buildFault(enableIstioAnnotation))
-                .withRetries(istioService.buildRetry(enableIstioAnnotation))
-                .addNewRoute().withNewDestinationLike(istioService.buildDestination(enableIstioAnnotation))
-                .endDestination().endRoute()
-                .endHttp()
+                .withHosts(addToHosts(config))
                 .endSpec();
-        if (istioService.isEnableGateway(enableIstioAnnotation)) {
+        for (IstioConfig route : configs) {
+            vsBuilder = vsBuilder.editSpec()
+                    .addNewHttp()
+                    .withMatch(buildMatches(route))
+                    .withTimeout(istioService.buildTimeout(route))
+                    .withFault(route.faultPercentage() == 0 ? null : istioService.buildFault(route))
+                    .withRetries(istioService.buildRetry(route))
+                    .addNewRoute().withNewDestinationLike(istioService.buildDestination(route))
+                    .endDestination().endRoute()
+                    .endHttp()
+                    .endSpec();
+        }
+        if (config.enableGateway()) {
             vsBuilder = vsBuilder.editSpec().withGateways(istioService.getApplicationName()).endSpec();
         }
-        VirtualService vs = vsBuilder.build();
-        vs = istioClient.v1beta1().virtualServices().resource(vs).create();
-        LOGGER.info("New VirtualService created: \n{}", Serialization.asYaml(vs));
+        return vsBuilder.build();
     }
 
-    private void editVirtualService(EnableIstio enableIstioAnnotation, VirtualService vs) {
-        LOGGER.info("Found VirtualService: {}", vs);
-        vs.getSpec().setHosts(List.of(addToHosts(enableIstioAnnotation)));
-        if (istioService.isEnableGateway(enableIstioAnnotation)) {
-            vs.getSpec().setGateways(List.of(istioService.getApplicationName()));
-        }
+    /**
+     * Builds the complete Gateway owned by the application
+     * @param enableIstioAnnotations annotations to process
+     * @return desired Gateway
+     */
+    public Gateway buildGateway(List<EnableIstio> enableIstioAnnotations) {
+        return buildGateway(istioService.resolveAll(enableIstioAnnotations).get(0));
+    }
 
-        if (!istioService.getVersion(enableIstioAnnotation).isEmpty()) {
-            int index = findDestination(vs.getSpec().getHttp(), istioService.getVersion(enableIstioAnnotation));
-            if (index != -1) {
-                vs.getSpec().getHttp().get(index).getRoute().getFirst()
-                        .setWeight(istioService.getWeight(enableIstioAnnotation) == 0 ? null : istioService.getWeight(enableIstioAnnotation));
-            } else {
-                if (istioService.getWeight(enableIstioAnnotation) == 100)
-                    vs.getSpec().getHttp().add(istioService.buildRoute(enableIstioAnnotation));
-                else
-                    vs.getSpec().getHttp().getFirst().getRoute()
-                            .add(istioService.buildRouteDestination(enableIstioAnnotation));
-            }
-        } else {
-            vs.getSpec().getHttp().get(0).setTimeout(istioService.getTimeout(enableIstioAnnotation) == 0 ? null : formatDuration(istioService.getTimeout(enableIstioAnnotation), "s's'"));
-            vs.getSpec().getHttp().get(0).setRetries(istioService.buildRetry(enableIstioAnnotation));
-            vs.getSpec().getHttp().get(0).setFault(istioService.getFaultPercentage(enableIstioAnnotation) == 0 ? null : istioService.buildFault(enableIstioAnnotation));
-            vs.getSpec().getHttp().get(0).getRoute().get(0).setDestination(istioService.buildDestination(enableIstioAnnotation));
-        }
-        vs = istioClient.v1beta1().virtualServices().resource(vs).update();
-        LOGGER.info("VirtualService updated: \n{}", Serialization.asYaml(vs));
+    /**
+     * Builds all resources owned by the application without calling the API server, e.g. to generate manifests
+     * @param enableIstioAnnotations annotations to process
+     * @return desired DestinationRule, VirtualService and, if enabled, Gateway annotated with their spec hashes
+     */
+    public List<HasMetadata> buildResources(List<EnableIstio> enableIstioAnnotations) {
+        List<IstioConfig> configs = istioService.resolveAll(enableIstioAnnotations);
+        List<HasMetadata> resources = new ArrayList<>();
+        resources.add(withSpecHash(buildDestinationRule(configs.get(0))));
+        resources.add(withSpecHash(buildVirtualService(configs)));
+        if (configs.get(0).enableGateway())
+            resources.add(withSpecHash(buildGateway(configs.get(0))));
+        return resources;
     }
 
-    private void createNewGateway(EnableIstio enableIstioAnnotation) {
-        Gateway gateway = new GatewayBuilder()
+    private Gateway buildGateway(IstioConfig config) {
+        return new GatewayBuilder()
                 .withNewMetadata().withName(istioService.getApplicationName()).endMetadata()
                 .withNewSpec()
                 .addToSelector("istio", "ingressgateway")
@@ -166,40 +919,75 @@ public class EnableIstioAnnotationProcessor {
                                 .withProtocol("HTTP")
                                 .withName("http")
                                 .build())
-                        .addToHosts(istioService.getApplicationName() + "." + istioService.getDomain(enableIstioAnnotation))
+                        .addToHosts(istioService.getApplicationName() + "." + config.domain())
                         .build())
                 .endSpec()
                 .build();
-        gateway = istioClient.v1beta1().gateways().resource(gateway).create();
-        LOGGER.info("New Gateway created: \n{}", Serialization.asYaml(gateway));
     }
 
-    private void editGateway(EnableIstio enableIstioAnnotation, Gateway gateway) {
-        LOGGER.info("Found Gateway: {}", gateway);
-        if (gateway.getSpec().getServers() != null && !gateway.getSpec().getServers().isEmpty()) {
-            Server server = gateway.getSpec().getServers().get(0);
-            String appHost = istioService.getApplicationName() + "." + istioService.getDomain(enableIstioAnnotation);
-            if (server.getHosts() != null && !server.getHosts().contains(appHost)) {
-                server.getHosts().add(appHost);
-            }
+    private List<HTTPMatchRequest> buildMatches(IstioConfig config) {
+        return config.matches().stream()
+                .map(istioService::buildHTTPMatchRequest)
+                .toList();
+    }
+
+    private <T extends HasMetadata> T withSpecHash(T resource) {
+        updateSpecHash(resource, SpecHash.specOf(resource));
+        return resource;
+    }
+
+    private boolean updateSpecHash(HasMetadata resource, Object spec) {
+        return updateSpecHash(resource, spec, null);
+    }
+
+    /**
+     * Stores the hash of the desired spec in the resource annotation.
+     * @param resource resource to annotate
+     * @param spec desired spec
+     * @param liveHash hash of the spec currently stored in the cluster, or null for new resources
+     * @return false if the spec stored in the cluster is already the desired one, so the write may be skipped
+     */
+    private boolean updateSpecHash(HasMetadata resource, Object spec, String liveHash) {
+        String hash = SpecHash.of(spec);
+        Map<String, String> annotations = resource.getMetadata().getAnnotations();
+        if (annotations == null) {
+            annotations = new HashMap<>();
+            resource.getMetadata().setAnnotations(annotations);
         }
-        gateway = istioClient.v1beta1().gateways().resource(gateway).update();
-        LOGGER.info("Gateway updated: \n{}", Serialization.asYaml(gateway));
+        String appliedHash = annotations.put(SpecHash.ANNOTATION, hash);
+        return !(hash.equals(appliedHash) && hash.equals(liveHash));
     }
 
-    private String[] addToHosts(EnableIstio enableIstioAnnotation) {
-        if (istioService.isEnableGateway(enableIstioAnnotation))
-            return new String[] { istioService.getApplicationName(), istioService.getApplicationName() + "." + istioService.getDomain(enableIstioAnnotation)};
+    private String[] addToHosts(IstioConfig config) {
+        if (config.enableGateway())
+            return new String[] { istioService.getApplicationName(), istioService.getApplicationName() + "." + config.domain()};
         else return new String[] { istioService.getApplicationName() };
     }
 
+    private int findRoute(List<HTTPRoute> routes, List<HTTPMatchRequest> matches) {
+        for (int i = 0; i < routes.size(); i++) {
+            List<HTTPMatchRequest> routeMatches = routes.get(i).getMatch();
+            if (matches.equals(routeMatches != null ? routeMatches : List.of()))
+                return i;
+        }
+        return -1;
+    }
+
+    private int findCatchAllRoute(List<HTTPRoute> routes) {
+        for (int i = 0; i < routes.size(); i++) {
+            if (routes.get(i).getMatch() == null || routes.get(i).getMatch().isEmpty())
+                return i;
+        }
+        return routes.size();
+    }
+
     private int findDestination(List<HTTPRoute> routes, String version) {
         if (routes == null || version == null || version.isEmpty()) {
             return -1;
         }
 
         for (int i = 0; i < routes.size(); i++) {
-            HTTPRouteDestination dest = routes.get(i).getRoute().getFirst();
+            HTTPRouteDestination dest = routes.get(i).getRoute().get(0);
             if (dest != null &&
                     dest.getDestination() != null &&
                     version.equals(dest.getDestination().getSubset())) {
@@ -0,0 +1,135 @@
+package com.github.piomin.springboot.istio.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.service.IstioConfig;
+import com.github.piomin.springboot.istio.service.IstioService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Re-applies the configuration after {@code istio.spring.*} properties change at runtime, e.g. from a config server.
+ * Changes arriving within the debounce period are coalesced into a single update.
+ * When only route settings change, just the VirtualService routes are patched.
+ */
+public class IstioConfigRefresher implements ApplicationListener<EnvironmentChangeEvent>, AutoCloseable {
+
+    private static final String PREFIX = "istio.spring.";
+    private static final Set<String> ROUTE_FIELDS = Set.of("timeout", "perTryTimeout", "numberOfRetries", "weight",
+            "faultType", "faultPercentage", "faultHttpStatus", "faultDelay");
+
+    private final Logger LOGGER = LoggerFactory.getLogger(IstioConfigRefresher.class);
+    private final IstioService istioService;
+    private final EnableIstioAnnotationProcessor processor;
+    private final ApplicationStartupListener listener;
+    private final long debounce;
+    private final ScheduledExecutorService workQueue;
+    private ScheduledFuture<?> pending;
+    // the shared resolve cache is cleared by the timeout and weight overrides, so it may already hold the new values
+    private volatile List<IstioConfig> applied;
+
+    /**
+     * @param istioService service resolving the configuration
+     * @param processor processor applying the changes
+     * @param listener listener holding the processed annotations
+     * @param debounce time in milliseconds to wait for further changes before applying them
+     */
+    public IstioConfigRefresher(IstioService istioService, EnableIstioAnnotationProcessor processor,
+                                ApplicationStartupListener listener, long debounce) {
+        this.istioService = istioService;
+        this.processor = processor;
+        this.listener = listener;
+        this.debounce = debounce;
+        this.workQueue = IstioSchedulers.singleThread("istio-config-refresh");
+        listener.getReconciliation().whenComplete((result, e) -> snapshot());
+    }
+
+    private void snapshot() {
+        List<EnableIstio> declarations = listener.getDeclarations();
+        if (!declarations.isEmpty())
+            applied = istioService.resolveAll(declarations);
+    }
+
+    @Override
+    public synchronized void onApplicationEvent(EnvironmentChangeEvent event) {
+        if (event.getKeys().stream().noneMatch(key -> key.startsWith(PREFIX)))
+            return;
+        if (pending != null)
+            pending.cancel(false);
+        // the delay also lets the properties be rebound before they are resolved again
+        pending = workQueue.schedule(this::refresh, debounce, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        workQueue.shutdownNow();
+    }
+
+    void refresh() {
+        List<EnableIstio> declarations = listener.getDeclarations();
+        if (declarations.isEmpty())
+            return;
+        try {
+            List<IstioConfig> before = applied;
+            istioService.refresh();
+            List<IstioConfig> after = istioService.resolveAll(declarations);
+            List<String> changed = new ArrayList<>();
+            if (before == null || before.size() != after.size()) {
+                changed.add("declarations");
+            } else {
+                for (int i = 0; i < before.size(); i++)
+                    changed.addAll(changedFields(before.get(i), after.get(i)));
+            }
+            if (changed.isEmpty()) {
+                LOGGER.debug("Istio configuration unchanged after environment change");
+            } else if (ROUTE_FIELDS.containsAll(changed)) {
+                LOGGER.info("Istio route configuration changed: {}", changed);
+                processor.patchRoutes(declarations);
+            } else {
+                LOGGER.info("Istio configuration changed: {}", changed);
+                processor.reconcile(declarations);
+            }
+            applied = after;
+        } catch (RuntimeException e) {
+            LOGGER.error("Applying changed Istio configuration failed", e);
+        }
+    }
+
+    /**
+     * @return names of the {@link IstioConfig} components with different values
+     */
+    public static List<String> changedFields(IstioConfig before, IstioConfig after) {
+        List<String> changed = new ArrayList<>();
+        compare(changed, "timeout", before.timeout(), after.timeout());
+        compare(changed, "version", before.version(), after.version());
+        compare(changed, "weight", before.weight(), after.weight());
+        compare(changed, "numberOfRetries", before.numberOfRetries(), after.numberOfRetries());
+        compare(changed, "circuitBreakerErrors", before.circuitBreakerErrors(), after.circuitBreakerErrors());
+        compare(changed, "enableGateway", before.enableGateway(), after.enableGateway());
+        compare(changed, "domain", before.domain(), after.domain());
+        compare(changed, "matches", before.matchKeys(), after.matchKeys());
+        compare(changed, "faultType", before.faultType(), after.faultType());
+        compare(changed, "faultPercentage", before.faultPercentage(), after.faultPercentage());
+        compare(changed, "faultHttpStatus", before.faultHttpStatus(), after.faultHttpStatus());
+        compare(changed, "faultDelay", before.faultDelay(), after.faultDelay());
+        compare(changed, "connectionPool", before.connectionPool(), after.connectionPool());
+        compare(changed, "loadBalancer", before.loadBalancer(), after.loadBalancer());
+        compare(changed, "outlierDetection", before.outlierDetection(), after.outlierDetection());
+        compare(changed, "perTryTimeout", before.perTryTimeout(), after.perTryTimeout());
+        return changed;
+    }
+
+    private static void compare(List<String> changed, String field, Object before, Object after) {
+        if (!Objects.equals(before, after))
+            changed.add(field);
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.piomin.springboot.istio.processor;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.github.piomin.springboot.istio.config.IstioProperties;
+import com.github.piomin.springboot.istio.service.IstioService;
+import io.fabric8.istio.client.IstioClient;
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
+import io.fabric8.kubernetes.api.model.coordination.v1.Lease;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.extended.leaderelection.LeaderCallbacks;
+import io.fabric8.kubernetes.client.extended.leaderelection.LeaderElectionConfigBuilder;
+import io.fabric8.kubernetes.client.extended.leaderelection.resourcelock.LeaderElectionRecord;
+import io.fabric8.kubernetes.client.extended.leaderelection.resourcelock.LeaseLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Elects a single replica per application version to reconcile Istio resources.
+ * The lease holder records the hash of the applied desired state on the Lease it renews,
+ * other replicas wait until it appears instead of repeating the same API calls.
+ */
+public class IstioLeaderElection {
+
+    public static final String RECONCILED_ANNOTATION = "istio.piomin.github.com/reconciled-hash";
+
+    private final Logger LOGGER = LoggerFactory.getLogger(IstioLeaderElection.class);
+    private final KubernetesClient client;
+    private final IstioService istioService;
+    private final IstioProperties properties;
+    private final String identity;
+    private final RequestBudget requestBudget;
+
+    public IstioLeaderElection(IstioClient istioClient, IstioService istioService, IstioProperties properties) {
+        this(istioClient, istioService, properties, null);
+    }
+
+    /**
+     * @param istioClient client used to read and write leases
+     * @param istioService service providing the application name
+     * @param properties properties of the leader election
+     * @param requestBudget budget of API calls, null if calls are not limited
+     */
+    public IstioLeaderElection(IstioClient istioClient, IstioService istioService, IstioProperties properties,
+                               RequestBudget requestBudget) {
+        this.requestBudget = requestBudget;
+        this.client = istioClient.adapt(KubernetesClient.class);
+        this.istioService = istioService;
+        this.properties = properties;
+        String hostname = System.getenv("HOSTNAME");
+        this.identity = hostname != null ? hostname : UUID.randomUUID().toString();
+    }
+
+    /**
+     * Runs the reconciliation if the current replica holds the lease, otherwise waits for the lease holder.
+     * The lease holder always reconciles, so the live resources are compared with the desired state
+     * and only those out of date are written.
+     * @param version version of the application
+     * @param desiredHash hash of the desired state of Istio resources
+     * @param reconciler reconciliation action
+     */
+    public void run(String version, String desiredHash, Runnable reconciler) {
+        String namespace = client.getNamespace() != null ? client.getNamespace() : "default";
+        String leaseName = getLeaseName(version);
+        IstioProperties.LeaderElectionProperties election = properties.getLeaderElection();
+        ReconciledLeaseLock lock = new ReconciledLeaseLock(namespace, leaseName, identity, requestBudget);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<?> elector = client.leaderElector()
+                .withConfig(new LeaderElectionConfigBuilder()
+                        .withName(leaseName)
+                        .withLock(lock)
+                        .withLeaseDuration(Duration.ofMillis(election.getLeaseDuration()))
+                        .withRenewDeadline(Duration.ofMillis(election.getRenewDeadline()))
+                        .withRetryPeriod(Duration.ofMillis(election.getRetryPeriod()))
+                        .withReleaseOnCancel(true)
+                        .withLeaderCallbacks(new LeaderCallbacks(
+                                () -> {
+                                    LOGGER.info("Lease {} acquired, reconciling Istio resources", leaseName);
+                                    try {
+                                        reconciler.run();
+                                        // written by the elector itself with the next renewal or the release
+                                        lock.reconciledHash = desiredHash;
+                                        done.complete(null);
+                                    } catch (RuntimeException e) {
+                                        done.completeExceptionally(e);
+                                    }
+                                },
+                                () -> LOGGER.debug("Lease {} released", leaseName),
+                                leader -> LOGGER.info("Lease {} held by: {}", leaseName, leader)))
+                        .build())
+                .build()
+                .start();
+
+        long deadline = System.currentTimeMillis() + properties.getReconcile().getTimeout();
+        boolean otherHolder = false;
+        try {
+            while (!done.isDone()) {
+                Lease lease = getLease(namespace, leaseName);
+                // the hash may be left by an earlier rollout, it is trusted once another replica held the lease
+                otherHolder |= isHeldByOther(lease);
+                if (otherHolder && isReconciled(lease, desiredHash)) {
+                    LOGGER.info("Istio resources reconciled by the lease holder");
+                    done.complete(null);
+                } else if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Timeout waiting for the reconciliation of lease: " + leaseName);
+                } else {
+                    waitFor(done, election.getRetryPeriod());
+                }
+            }
+            done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        } finally {
+            elector.cancel(true);
+        }
+    }
+
+    private String getLeaseName(String version) {
+        String name = istioService.getApplicationName() + "-" + (version.isEmpty() ? "default" : version) + "-istio";
+        return name.toLowerCase().replaceAll("[^a-z0-9.-]", "-");
+    }
+
+    private Lease getLease(String namespace, String leaseName) {
+        acquireBudget();
+        return client.leases().inNamespace(namespace).withName(leaseName).get();
+    }
+
+    private boolean isHeldByOther(Lease lease) {
+        String holder = lease != null && lease.getSpec() != null ? lease.getSpec().getHolderIdentity() : null;
+        return holder != null && !holder.isEmpty() && !holder.equals(identity);
+    }
+
+    private boolean isReconciled(Lease lease, String desiredHash) {
+        if (lease == null)
+            return false;
+        Map<String, String> annotations = lease.getMetadata().getAnnotations();
+        return annotations != null && desiredHash.equals(annotations.get(RECONCILED_ANNOTATION));
+    }
+
+    private void acquireBudget() {
+        if (requestBudget != null)
+            requestBudget.acquire();
+    }
+
+    /**
+     * Lease lock adding the hash of the reconciled state to the Lease written by the elector.
+     * The reads and renewals of the elector are limited by the request budget like other API calls.
+     */
+    private static class ReconciledLeaseLock extends LeaseLock {
+
+        private final RequestBudget requestBudget;
+        private volatile String reconciledHash;
+
+        ReconciledLeaseLock(String namespace, String name, String identity, RequestBudget requestBudget) {
+            super(namespace, name, identity);
+            this.requestBudget = requestBudget;
+        }
+
+        @Override
+        public LeaderElectionRecord get(KubernetesClient client) {
+            acquireBudget();
+            return super.get(client);
+        }
+
+        @Override
+        public void create(KubernetesClient client, LeaderElectionRecord leaderElectionRecord) {
+            acquireBudget();
+            super.create(client, leaderElectionRecord);
+        }
+
+        @Override
+        public void update(KubernetesClient client, LeaderElectionRecord leaderElectionRecord) {
+            acquireBudget();
+            super.update(client, leaderElectionRecord);
+        }
+
+        @Override
+        protected Lease toResource(LeaderElectionRecord leaderElectionRecord, ObjectMetaBuilder meta) {
+            if (reconciledHash != null)
+                meta.addToAnnotations(RECONCILED_ANNOTATION, reconciledHash);
+            return super.toResource(leaderElectionRecord, meta);
+        }
+
+        private void acquireBudget() {
+            if (requestBudget != null)
+                requestBudget.acquire();
+        }
+    }
+
+    private void waitFor(CompletableFuture<Void> done, long timeout) {
+        try {
+            done.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // the result is checked in the next iteration
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the lease holder", e);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.piomin.springboot.istio.processor;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.github.piomin.springboot.istio.service.IstioService;
+import io.fabric8.istio.api.networking.v1beta1.DestinationRule;
+import io.fabric8.istio.api.networking.v1beta1.DestinationRuleBuilder;
+import io.fabric8.istio.api.networking.v1beta1.Gateway;
+import io.fabric8.istio.api.networking.v1beta1.GatewayBuilder;
+import io.fabric8.istio.api.networking.v1beta1.VirtualService;
+import io.fabric8.istio.api.networking.v1beta1.VirtualServiceBuilder;
+import io.fabric8.istio.client.IstioClient;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory cache of the DestinationRule, VirtualService and Gateway owned by the application.
+ * The cache is fed by a single watch stream per resource and triggers a new reconciliation
+ * whenever the resources are modified or deleted by someone else.
+ */
+public class IstioResourceCache implements AutoCloseable {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(IstioResourceCache.class);
+    private final IstioClient istioClient;
+    private final IstioService istioService;
+    private final long minInterval;
+    private final ScheduledExecutorService workQueue;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private final RequestBudget requestBudget;
+
+    private volatile SharedIndexInformer<DestinationRule> destinationRuleInformer;
+    private volatile SharedIndexInformer<VirtualService> virtualServiceInformer;
+    private volatile SharedIndexInformer<Gateway> gatewayInformer;
+    private volatile Runnable reconciler;
+    private volatile boolean started;
+    private volatile long lastRun;
+
+    /**
+     * @param istioClient client used to watch resources
+     * @param istioService service providing the resource names
+     * @param minInterval minimal time in milliseconds between two drift reconciliations
+     */
+    public IstioResourceCache(IstioClient istioClient, IstioService istioService, long minInterval) {
+        this(istioClient, istioService, minInterval, null);
+    }
+
+    /**
+     * @param istioClient client used to watch resources
+     * @param istioService service providing the resource names
+     * @param minInterval minimal time in milliseconds between two drift reconciliations
+     * @param requestBudget budget of API calls, null if calls are not limited
+     */
+    public IstioResourceCache(IstioClient istioClient, IstioService istioService, long minInterval,
+                              RequestBudget requestBudget) {
+        this.requestBudget = requestBudget;
+        this.istioClient = istioClient;
+        this.istioService = istioService;
+        this.minInterval = minInterval;
+        this.workQueue = IstioSchedulers.singleThread("istio-drift-reconcile");
+    }
+
+    /**
+     * Starts watching resources in the background, the cache serves reads once the initial state is synced.
+     * @param watchGateway whether the Gateway is managed by the application
+     * @param reconciler action re-applying the desired state after a drift
+     */
+    public void start(boolean watchGateway, Runnable reconciler) {
+        this.reconciler = reconciler;
+        workQueue.execute(() -> {
+            try {
+                inform(watchGateway);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Watching Istio resources failed, reading them from the API server", e);
+            }
+        });
+    }
+
+    private synchronized void inform(boolean watchGateway) {
+        if (started)
+            return;
+        // each informer lists and then watches the resource, the reconnections are backed off by the client
+        acquireBudget();
+        destinationRuleInformer = istioClient.v1beta1().destinationRules()
+                .withName(istioService.getDestinationRuleName())
+                .inform(new DriftHandler<>());
+        acquireBudget();
+        virtualServiceInformer = istioClient.v1beta1().virtualServices()
+                .withName(istioService.getVirtualServiceName())
+                .inform(new DriftHandler<>());
+        if (watchGateway) {
+            acquireBudget();
+            gatewayInformer = istioClient.v1beta1().gateways()
+                    .withName(istioService.getApplicationName())
+                    .inform(new DriftHandler<>());
+        }
+        started = true;
+        LOGGER.info("Watching Istio resources of application: {}", istioService.getApplicationName());
+    }
+
+    private void acquireBudget() {
+        if (requestBudget != null)
+            requestBudget.acquire();
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    public DestinationRule getDestinationRule() {
+        DestinationRule dr = first(destinationRuleInformer);
+        return dr == null ? null : new DestinationRuleBuilder(dr).build();
+    }
+
+    public VirtualService getVirtualService() {
+        VirtualService vs = first(virtualServiceInformer);
+        return vs == null ? null : new VirtualServiceBuilder(vs).build();
+    }
+
+    public Gateway getGateway() {
+        Gateway gateway = first(gatewayInformer);
+        return gateway == null ? null : new GatewayBuilder(gateway).build();
+    }
+
+    @Override
+    public void close() {
+        workQueue.shutdownNow();
+        if (destinationRuleInformer != null)
+            destinationRuleInformer.close();
+        if (virtualServiceInformer != null)
+            virtualServiceInformer.close();
+        if (gatewayInformer != null)
+            gatewayInformer.close();
+    }
+
+    private <T> T first(SharedIndexInformer<T> informer) {
+        if (informer == null)
+            return null;
+        List<T> items = informer.getIndexer().list();
+        return items.isEmpty() ? null : items.get(0);
+    }
+
+    private void enqueue(String reason) {
+        // drifts detected while a reconciliation is already queued are coalesced
+        if (!pending.compareAndSet(false, true))
+            return;
+        long delay = Math.max(0, lastRun + minInterval - System.currentTimeMillis());
+        LOGGER.info("Drift detected ({}), reconciling Istio resources in {} ms", reason, delay);
+        workQueue.schedule(this::reconcile, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void reconcile() {
+        pending.set(false);
+        lastRun = System.currentTimeMillis();
+        try {
+            reconciler.run();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Drift reconciliation failed", e);
+            enqueue("retry after failure");
+        }
+    }
+
+    private class DriftHandler<T extends HasMetadata> implements ResourceEventHandler<T> {
+
+        @Override
+        public void onAdd(T resource) {
+            if (isStarted() && !SpecHash.matchesAnnotation(resource))
+                enqueue(resource.getKind() + " added");
+        }
+
+        @Override
+        public void onUpdate(T oldResource, T newResource) {
+            if (!SpecHash.matchesAnnotation(newResource))
+                enqueue(newResource.getKind() + " modified");
+        }
+
+        @Override
+        public void onDelete(T resource, boolean deletedFinalStateUnknown) {
+            enqueue(resource.getKind() + " deleted");
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.piomin.springboot.istio.processor;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Creates the executors running the background work of the library.
+ */
+public final class IstioSchedulers {
+
+    private IstioSchedulers() {
+    }
+
+    /**
+     * Creates a single-thread scheduler on a daemon thread, so it does not keep the JVM alive
+     * @param threadName name of the thread
+     * @return new scheduler
+     */
+    public static ScheduledExecutorService singleThread(String threadName) {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.piomin.springboot.istio.processor;
+
+import java.util.function.Supplier;
+
+/**
+ * Receives measurements of the Istio resources reconciliation.
+ * The default implementation does nothing, so the processor does not depend on any metrics library.
+ */
+public interface ReconcileMetrics {
+
+    ReconcileMetrics NOOP = new ReconcileMetrics() {
+    };
+
+    /**
+     * Measures a single Kubernetes API call
+     * @param kind kind of the resource, e.g. VirtualService
+     * @param operation operation: get, create, update or apply
+     * @param call API call
+     * @return result of the call
+     */
+    default <T> T record(String kind, String operation, Supplier<T> call) {
+        return call.get();
+    }
+
+    /**
+     * Called when a write has been skipped, because the resource is already up-to-date
+     * @param kind kind of the resource
+     * @param duration time in nanoseconds spent on computing the desired state
+     */
+    default void skipped(String kind, long duration) {
+    }
+
+    /**
+     * Called when a write has been rejected with an optimistic-concurrency conflict
+     * @param kind kind of the resource
+     */
+    default void conflict(String kind) {
+    }
+
+    /**
+     * Called when an API call waited for a token of the request budget
+     * @param duration time in nanoseconds spent waiting
+     */
+    default void throttled(long duration) {
+    }
+
+    /**
+     * Called after a successful reconciliation of all resources
+     */
+    default void reconciled() {
+    }
+}
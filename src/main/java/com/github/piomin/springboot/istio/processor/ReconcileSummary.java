@@ -0,0 +1,16 @@
+package com.github.piomin.springboot.istio.processor;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Outcome of a single reconciliation of Istio resources.
+ * @param finishedAt time the reconciliation finished
+ * @param duration total duration in milliseconds
+ * @param durations duration in milliseconds of writing each resource kind, including retries
+ * @param conflictRetries number of retried optimistic-concurrency conflicts
+ * @param error error message, or null if the reconciliation succeeded
+ */
+public record ReconcileSummary(Instant finishedAt, long duration, Map<String, Long> durations,
+                               int conflictRetries, String error) {
+}
@@ -0,0 +1,101 @@
+package com.github.piomin.springboot.istio.processor;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Token bucket limiting the rate of Kubernetes API calls made by the library.
+ * A random startup jitter, counted from the first call, spreads the first calls of pods started together.
+ */
+public class RequestBudget {
+
+    private final Logger LOGGER = LoggerFactory.getLogger(RequestBudget.class);
+    private final double qps;
+    private final double burst;
+    private final long startupJitter;
+    private final ReconcileMetrics metrics;
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+
+    private double tokens;
+    private long lastRefill;
+    private long notBefore = -1;
+
+    /**
+     * @param qps number of calls allowed per second (0 means no limit)
+     * @param burst maximum number of calls allowed at once
+     * @param startupJitter maximum random delay of the first call in milliseconds
+     */
+    public RequestBudget(double qps, int burst, long startupJitter) {
+        this(qps, burst, startupJitter, null);
+    }
+
+    /**
+     * @param qps number of calls allowed per second (0 means no limit)
+     * @param burst maximum number of calls allowed at once
+     * @param startupJitter maximum random delay of the first call in milliseconds
+     * @param metrics metrics recording the waits, null if not recorded
+     */
+    public RequestBudget(double qps, int burst, long startupJitter, ReconcileMetrics metrics) {
+        this.metrics = metrics != null ? metrics : ReconcileMetrics.NOOP;
+        this.qps = qps;
+        this.burst = Math.max(burst, 1);
+        this.tokens = this.burst;
+        this.lastRefill = System.nanoTime();
+        this.startupJitter = startupJitter;
+    }
+
+    /**
+     * Blocks until the call is allowed by the budget
+     */
+    public void acquire() {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // the bean is created long before the first call in a slow starting context, so the jitter starts here
+            if (notBefore < 0)
+                notBefore = now + TimeUnit.MILLISECONDS.toNanos(
+                        startupJitter > 0 ? ThreadLocalRandom.current().nextLong(startupJitter + 1) : 0);
+            wait = Math.max(0, notBefore - now);
+            if (qps > 0) {
+                tokens = Math.min(burst, tokens + (now - lastRefill) * qps / TimeUnit.SECONDS.toNanos(1));
+                lastRefill = now;
+                // the token is reserved now, the caller sleeps until it becomes available
+                tokens -= 1;
+                if (tokens < 0)
+                    wait = Math.max(wait, (long) (-tokens / qps * TimeUnit.SECONDS.toNanos(1)));
+            }
+        }
+        if (wait > 0) {
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(wait);
+            LOGGER.debug("Waiting {} ms for the API request budget", waitMillis);
+            totalWaitTime.addAndGet(waitMillis);
+            maxWaitTime.accumulateAndGet(waitMillis, Math::max);
+            metrics.throttled(wait);
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the API request budget", e);
+            }
+        }
+    }
+
+    /**
+     * @return total time in milliseconds callers waited for a token
+     */
+    public long getTotalWaitTime() {
+        return totalWaitTime.get();
+    }
+
+    /**
+     * @return the longest time in milliseconds a single caller waited for a token
+     */
+    public long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+}
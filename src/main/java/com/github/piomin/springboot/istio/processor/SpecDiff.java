@@ -0,0 +1,77 @@
+package com.github.piomin.springboot.istio.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+/**
+ * Computes a compact, field-level diff between two Istio resource specs.
+ */
+public final class SpecDiff {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int MAX_VALUE_LENGTH = 120;
+
+    private SpecDiff() {
+    }
+
+    /**
+     * Takes an immutable snapshot of a spec, which may be modified afterwards
+     * @param spec spec to copy
+     * @return snapshot of the spec
+     */
+    public static JsonNode snapshot(Object spec) {
+        return spec == null ? MissingNode.getInstance() : MAPPER.valueToTree(spec);
+    }
+
+    /**
+     * @param before spec before the change
+     * @param after spec after the change
+     * @return list of changed fields, e.g. {@code http[0].timeout: "6s" -> "3s"}
+     */
+    public static List<String> diff(Object before, Object after) {
+        List<String> changes = new ArrayList<>();
+        diff("", toNode(before), toNode(after), changes);
+        return changes;
+    }
+
+    private static JsonNode toNode(Object spec) {
+        return spec instanceof JsonNode node ? node : snapshot(spec);
+    }
+
+    private static void diff(String path, JsonNode before, JsonNode after, List<String> changes) {
+        if (isMissing(before) && isMissing(after))
+            return;
+        if (isMissing(before)) {
+            changes.add("+ " + path + ": " + format(after));
+        } else if (isMissing(after)) {
+            changes.add("- " + path + ": " + format(before));
+        } else if (before.isObject() && after.isObject()) {
+            Set<String> names = new TreeSet<>();
+            before.fieldNames().forEachRemaining(names::add);
+            after.fieldNames().forEachRemaining(names::add);
+            for (String name : names)
+                diff(path.isEmpty() ? name : path + "." + name, before.path(name), after.path(name), changes);
+        } else if (before.isArray() && after.isArray()) {
+            int size = Math.max(before.size(), after.size());
+            for (int i = 0; i < size; i++)
+                diff(path + "[" + i + "]", before.path(i), after.path(i), changes);
+        } else if (!before.equals(after)) {
+            changes.add(path + ": " + format(before) + " -> " + format(after));
+        }
+    }
+
+    private static boolean isMissing(JsonNode node) {
+        return node == null || node.isMissingNode() || node.isNull();
+    }
+
+    private static String format(JsonNode node) {
+        String value = node.toString();
+        return value.length() > MAX_VALUE_LENGTH ? value.substring(0, MAX_VALUE_LENGTH) + "..." : value;
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.piomin.springboot.istio.processor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+import io.fabric8.istio.api.networking.v1beta1.DestinationRule;
+import io.fabric8.istio.api.networking.v1beta1.Gateway;
+import io.fabric8.istio.api.networking.v1beta1.VirtualService;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+
+/**
+ * Computes a deterministic hash of an Istio resource spec.
+ * Object fields are sorted by name and lists, which order has no meaning for Istio, are sorted by content.
+ */
+public final class SpecHash {
+
+    public static final String ANNOTATION = "istio.piomin.github.com/spec-hash";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Set<String> UNORDERED_LISTS = Set.of("hosts", "gateways", "subsets", "exportTo");
+
+    private SpecHash() {
+    }
+
+    public static String of(Object spec) {
+        String canonical = canonical(MAPPER.valueToTree(spec), null);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Checks whether the resource spec is still the one recorded in the hash annotation
+     * @param resource resource read from the cluster
+     * @return true if the resource was not modified since it has been written by the library
+     */
+    public static boolean matchesAnnotation(HasMetadata resource) {
+        Map<String, String> annotations = resource.getMetadata().getAnnotations();
+        return annotations != null && of(specOf(resource)).equals(annotations.get(ANNOTATION));
+    }
+
+    static Object specOf(HasMetadata resource) {
+        if (resource instanceof DestinationRule dr)
+            return dr.getSpec();
+        if (resource instanceof VirtualService vs)
+            return vs.getSpec();
+        return ((Gateway) resource).getSpec();
+    }
+
+    static String canonical(JsonNode node, String field) {
+        if (node.isObject()) {
+            List<String> names = new ArrayList<>();
+            node.fieldNames().forEachRemaining(names::add);
+            Collections.sort(names);
+            StringJoiner joiner = new StringJoiner(",", "{", "}");
+            for (String name : names) {
+                JsonNode value = node.get(name);
+                if (value.isNull())
+                    continue;
+                joiner.add(TextNode.valueOf(name) + ":" + canonical(value, name));
+            }
+            return joiner.toString();
+        }
+        if (node.isArray()) {
+            List<String> items = new ArrayList<>();
+            node.forEach(item -> items.add(canonical(item, null)));
+            if (UNORDERED_LISTS.contains(field))
+                Collections.sort(items);
+            return "[" + String.join(",", items) + "]";
+        }
+        return node.toString();
+    }
+}
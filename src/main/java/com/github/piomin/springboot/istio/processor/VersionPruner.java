@@ -0,0 +1,243 @@
+package com.github.piomin.springboot.istio.processor;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.github.piomin.springboot.istio.service.IstioService;
+import io.fabric8.istio.api.api.networking.v1alpha3.HTTPRoute;
+import io.fabric8.istio.api.api.networking.v1alpha3.HTTPRouteDestination;
+import io.fabric8.istio.api.api.networking.v1alpha3.Subset;
+import io.fabric8.istio.api.networking.v1beta1.DestinationRule;
+import io.fabric8.istio.api.networking.v1beta1.VirtualService;
+import io.fabric8.istio.client.IstioClient;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes subsets and routes of versions that no longer run.
+ * A subset is stale if its labels do not select any running pod of the application.
+ * The time a subset became stale is stored in the {@code DestinationRule} annotation,
+ * and the subset is removed once it stays stale for the grace period.
+ * Besides each reconciliation, the check runs on a schedule, so versions are removed also when nothing else changes.
+ */
+public class VersionPruner implements AutoCloseable {
+
+    public static final String STALE_ANNOTATION = "istio.piomin.github.com/stale-subsets";
+
+    private final Logger LOGGER = LoggerFactory.getLogger(VersionPruner.class);
+    private final KubernetesClient client;
+    private final IstioService istioService;
+    private final long gracePeriod;
+    private final long interval;
+    private final ScheduledExecutorService workQueue;
+    private final RequestBudget requestBudget;
+
+    public VersionPruner(IstioClient istioClient, IstioService istioService, long gracePeriod) {
+        this(istioClient, istioService, gracePeriod, 0);
+    }
+
+    /**
+     * @param istioClient client used to list pods
+     * @param istioService service providing the application name
+     * @param gracePeriod time in milliseconds a subset has to be stale before it is removed
+     * @param interval time in milliseconds between two scheduled checks, 0 disables the schedule
+     */
+    public VersionPruner(IstioClient istioClient, IstioService istioService, long gracePeriod, long interval) {
+        this(istioClient, istioService, gracePeriod, interval, null);
+    }
+
+    /**
+     * @param istioClient client used to list pods
+     * @param istioService service providing the application name
+     * @param gracePeriod time in milliseconds a subset has to be stale before it is removed
+     * @param interval time in milliseconds between two scheduled checks, 0 disables the schedule
+     * @param requestBudget budget of API calls, null if calls are not limited
+     */
+    public VersionPruner(IstioClient istioClient, IstioService istioService, long gracePeriod, long interval,
+                         RequestBudget requestBudget) {
+        this.requestBudget = requestBudget;
+        this.client = istioClient.adapt(KubernetesClient.class);
+        this.istioService = istioService;
+        this.gracePeriod = gracePeriod;
+        this.interval = interval;
+        this.workQueue = IstioSchedulers.singleThread("istio-prune");
+    }
+
+    /**
+     * Runs the reconciliation on each interval. It prunes the DestinationRule only on the replica
+     * that reconciles, i.e. on the lease holder with leader election enabled.
+     * @param reconciler reconciliation action
+     */
+    public void start(Runnable reconciler) {
+        if (interval <= 0)
+            return;
+        workQueue.scheduleWithFixedDelay(() -> {
+            try {
+                reconciler.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Scheduled pruning of stale versions failed", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        workQueue.shutdownNow();
+    }
+
+    /**
+     * Marks stale subsets of the DestinationRule and removes those stale for longer than the grace period
+     * @param dr DestinationRule to modify
+     * @param currentVersion version of the application, never removed
+     * @param pruned collects names of the removed subsets
+     * @return true if the DestinationRule has been modified
+     */
+    public boolean prune(DestinationRule dr, String currentVersion, Set<String> pruned) {
+        if (requestBudget != null)
+            requestBudget.acquire();
+        List<Map<String, String>> podLabels = client.pods()
+                .withLabel("app", istioService.getApplicationName())
+                .list().getItems().stream()
+                .filter(this::isRunning)
+                .map(pod -> pod.getMetadata().getLabels())
+                .toList();
+        return prune(dr, currentVersion, podLabels, Instant.now(), pruned);
+    }
+
+    /**
+     * @param dr DestinationRule to modify
+     * @param currentVersion version of the application, never removed
+     * @param podLabels labels of running pods of the application
+     * @param now current time
+     * @param pruned collects names of the removed subsets
+     * @return true if the DestinationRule has been modified
+     */
+    public boolean prune(DestinationRule dr, String currentVersion, Collection<Map<String, String>> podLabels,
+                         Instant now, Set<String> pruned) {
+        Map<String, String> annotations = dr.getMetadata().getAnnotations();
+        if (annotations == null) {
+            annotations = new HashMap<>();
+            dr.getMetadata().setAnnotations(annotations);
+        }
+        Map<String, Long> previous = parse(annotations.get(STALE_ANNOTATION));
+        Map<String, Long> staleSince = new LinkedHashMap<>();
+        Iterator<Subset> subsets = dr.getSpec().getSubsets().iterator();
+        while (subsets.hasNext()) {
+            Subset subset = subsets.next();
+            if (subset.getName().equals(currentVersion) || isSelected(subset, podLabels))
+                continue;
+            long since = previous.getOrDefault(subset.getName(), now.toEpochMilli());
+            if (now.toEpochMilli() - since >= gracePeriod) {
+                subsets.remove();
+                pruned.add(subset.getName());
+                LOGGER.info("Subset {} removed, no pod runs it since {}", subset.getName(), Instant.ofEpochMilli(since));
+            } else {
+                staleSince.put(subset.getName(), since);
+            }
+        }
+        if (staleSince.isEmpty())
+            annotations.remove(STALE_ANNOTATION);
+        else
+            annotations.put(STALE_ANNOTATION, format(staleSince));
+        return !pruned.isEmpty() || !staleSince.equals(previous);
+    }
+
+    /**
+     * Removes the route destinations of pruned subsets and rebalances weights of the remaining ones
+     * @param vs VirtualService to modify
+     * @param pruned names of the removed subsets
+     */
+    public static void pruneRoutes(VirtualService vs, Set<String> pruned) {
+        if (pruned.isEmpty() || vs.getSpec().getHttp() == null)
+            return;
+        Iterator<HTTPRoute> routes = vs.getSpec().getHttp().iterator();
+        while (routes.hasNext()) {
+            HTTPRoute route = routes.next();
+            List<HTTPRouteDestination> destinations = route.getRoute();
+            if (destinations == null)
+                continue;
+            boolean removed = destinations.removeIf(d -> d.getDestination() != null
+                    && pruned.contains(d.getDestination().getSubset()));
+            if (destinations.isEmpty())
+                routes.remove();
+            else if (removed)
+                rebalance(destinations);
+        }
+    }
+
+    /**
+     * Scales weights of the destinations proportionally, so they sum up to 100
+     * @param destinations destinations of a single route
+     */
+    public static void rebalance(List<HTTPRouteDestination> destinations) {
+        if (destinations.size() == 1) {
+            destinations.get(0).setWeight(null);
+            return;
+        }
+        int total = destinations.stream().mapToInt(d -> d.getWeight() != null ? d.getWeight() : 0).sum();
+        List<Integer> weights = new ArrayList<>(destinations.size());
+        int assigned = 0;
+        int largest = 0;
+        for (int i = 0; i < destinations.size(); i++) {
+            Integer weight = destinations.get(i).getWeight();
+            int scaled = total == 0 ? 100 / destinations.size() : (weight != null ? weight : 0) * 100 / total;
+            weights.add(scaled);
+            assigned += scaled;
+            if (scaled > weights.get(largest))
+                largest = i;
+        }
+        // the rounding remainder goes to the destination with the largest weight
+        weights.set(largest, weights.get(largest) + 100 - assigned);
+        for (int i = 0; i < destinations.size(); i++)
+            destinations.get(i).setWeight(weights.get(i));
+    }
+
+    private boolean isRunning(Pod pod) {
+        String phase = pod.getStatus() != null ? pod.getStatus().getPhase() : null;
+        return pod.getMetadata().getDeletionTimestamp() == null
+                && !"Succeeded".equals(phase) && !"Failed".equals(phase);
+    }
+
+    private boolean isSelected(Subset subset, Collection<Map<String, String>> podLabels) {
+        Map<String, String> selector = subset.getLabels();
+        if (selector == null || selector.isEmpty())
+            return true;
+        return podLabels.stream()
+                .anyMatch(labels -> labels != null && labels.entrySet().containsAll(selector.entrySet()));
+    }
+
+    private Map<String, Long> parse(String value) {
+        Map<String, Long> staleSince = new LinkedHashMap<>();
+        if (value == null || value.isEmpty())
+            return staleSince;
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split("=", 2);
+            if (parts.length == 2) {
+                try {
+                    staleSince.put(parts[0], Long.parseLong(parts[1]));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Invalid entry in {} annotation: {}", STALE_ANNOTATION, entry);
+                }
+            }
+        }
+        return staleSince;
+    }
+
+    private String format(Map<String, Long> staleSince) {
+        return staleSince.entrySet().stream()
+                .map(e -> e.getKey() + "=" + e.getValue())
+                .collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.piomin.springboot.istio.service;
+
+import com.github.piomin.springboot.istio.annotation.H2UpgradePolicy;
+
+/**
+ * Connection pool settings resolved from {@code @ConnectionPool} and {@code istio.spring.connection-pool.*} properties.
+ * Durations are in milliseconds, {@code 0} leaves the Envoy default.
+ */
+public record ConnectionPoolConfig(int maxConnections, long connectTimeout,
+                                   int tcpKeepaliveProbes, long tcpKeepaliveTime, long tcpKeepaliveInterval,
+                                   int http1MaxPendingRequests, int http2MaxRequests, int maxRequestsPerConnection,
+                                   int maxRetries, long idleTimeout, H2UpgradePolicy h2UpgradePolicy) {
+
+    public static final ConnectionPoolConfig DEFAULT =
+            new ConnectionPoolConfig(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, H2UpgradePolicy.DEFAULT);
+
+    public boolean hasTcpKeepalive() {
+        return tcpKeepaliveProbes > 0 || tcpKeepaliveTime > 0 || tcpKeepaliveInterval > 0;
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.piomin.springboot.istio.service;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import com.github.piomin.springboot.istio.annotation.FaultType;
+import com.github.piomin.springboot.istio.annotation.HashKey;
+import com.github.piomin.springboot.istio.annotation.LoadBalancerPolicy;
+import com.github.piomin.springboot.istio.annotation.Match;
+import com.github.piomin.springboot.istio.annotation.MatchType;
+
+/**
+ * Configuration resolved from {@code @EnableIstio} and {@code istio.spring.*} properties.
+ * Values are validated once, when the record is created.
+ */
+public record IstioConfig(int timeout, String version, int weight, int numberOfRetries, int circuitBreakerErrors,
+                          boolean enableGateway, String domain, List<Match> matches,
+                          FaultType faultType, int faultPercentage, int faultHttpStatus, long faultDelay,
+                          ConnectionPoolConfig connectionPool, LoadBalancerConfig loadBalancer,
+                          OutlierDetectionConfig outlierDetection, long perTryTimeout) {
+
+    public IstioConfig {
+        check(timeout >= 0, "timeout must not be negative, was " + timeout);
+        check(perTryTimeout >= 0 && (timeout == 0 || perTryTimeout <= timeout),
+                "per try timeout must be between 0 and the timeout, was " + perTryTimeout);
+        check(weight >= 0 && weight <= 100, "weight must be between 0 and 100, was " + weight);
+        check(numberOfRetries >= 0, "number of retries must not be negative, was " + numberOfRetries);
+        check(circuitBreakerErrors >= 0, "circuit breaker errors must not be negative, was " + circuitBreakerErrors);
+        check(faultPercentage >= 0 && faultPercentage <= 100,
+                "fault percentage must be between 0 and 100, was " + faultPercentage);
+        check(faultDelay >= 0, "fault delay must not be negative, was " + faultDelay);
+        check(connectionPool.maxConnections() >= 0 && connectionPool.connectTimeout() >= 0
+                        && connectionPool.tcpKeepaliveProbes() >= 0 && connectionPool.tcpKeepaliveTime() >= 0
+                        && connectionPool.tcpKeepaliveInterval() >= 0 && connectionPool.http1MaxPendingRequests() >= 0
+                        && connectionPool.http2MaxRequests() >= 0 && connectionPool.maxRequestsPerConnection() >= 0
+                        && connectionPool.maxRetries() >= 0 && connectionPool.idleTimeout() >= 0,
+                "connection pool settings must not be negative, was " + connectionPool);
+        check(connectionPool.h2UpgradePolicy() != null, "h2 upgrade policy must be set");
+        checkLoadBalancer(loadBalancer);
+        checkOutlierDetection(outlierDetection);
+        for (Match match : matches) {
+            boolean keyed = match.type() == MatchType.HEADERS || match.type() == MatchType.QUERY_PARAMS
+                    || match.type() == MatchType.SOURCE_LABELS;
+            check(!keyed || !match.key().isEmpty(), match.type() + " match requires a key: " + match.value());
+        }
+        matches = List.copyOf(matches);
+    }
+
+    private static void checkLoadBalancer(LoadBalancerConfig lb) {
+        check(lb.policy() != null && lb.hashKey() != null, "load balancer policy and hash key must be set");
+        check(!lb.isConsistentHash() || lb.hashKey() != HashKey.NONE,
+                lb.policy() + " load balancer requires a hash key");
+        check(lb.isConsistentHash() || lb.hashKey() == HashKey.NONE,
+                "hash key is supported by RING_HASH and MAGLEV load balancers only, was " + lb.policy());
+        boolean named = lb.hashKey() == HashKey.HEADER || lb.hashKey() == HashKey.COOKIE
+                || lb.hashKey() == HashKey.QUERY_PARAMETER;
+        check(named == (lb.hashKeyName() != null && !lb.hashKeyName().isEmpty()),
+                named ? lb.hashKey() + " hash key requires a name" : lb.hashKey() + " hash key does not take a name");
+        check(lb.cookieTtl() >= 0, "cookie ttl must not be negative, was " + lb.cookieTtl());
+        check(lb.cookieTtl() == 0 || lb.hashKey() == HashKey.COOKIE, "cookie ttl requires the COOKIE hash key");
+        check(lb.ringSize() >= 0, "ring size must not be negative, was " + lb.ringSize());
+        check(lb.ringSize() == 0 || lb.isConsistentHash(), "ring size requires RING_HASH or MAGLEV load balancer");
+        check(lb.ringSize() == 0 || lb.policy() != LoadBalancerPolicy.MAGLEV
+                        || BigInteger.valueOf(lb.ringSize()).isProbablePrime(32),
+                "MAGLEV table size must be a prime number, was " + lb.ringSize());
+    }
+
+    private static void checkOutlierDetection(OutlierDetectionConfig od) {
+        check(od.interval() > 0, "outlier detection interval must be positive, was " + od.interval());
+        check(od.baseEjectionTime() > 0, "base ejection time must be positive, was " + od.baseEjectionTime());
+        check(od.maxEjectionPercent() >= 0 && od.maxEjectionPercent() <= 100,
+                "max ejection percent must be between 0 and 100, was " + od.maxEjectionPercent());
+        check(od.minHealthPercent() >= 0 && od.minHealthPercent() <= 100,
+                "min health percent must be between 0 and 100, was " + od.minHealthPercent());
+        check(od.consecutiveGatewayErrors() >= 0,
+                "consecutive gateway errors must not be negative, was " + od.consecutiveGatewayErrors());
+        check(od.consecutiveLocalOriginFailures() >= 0,
+                "consecutive local origin failures must not be negative, was " + od.consecutiveLocalOriginFailures());
+        check(od.consecutiveLocalOriginFailures() == 0 || od.splitExternalLocalOriginErrors(),
+                "consecutive local origin failures require split external local origin errors");
+    }
+
+    /**
+     * @return true if any of the consecutive errors thresholds enables outlier detection
+     */
+    public boolean isOutlierDetectionEnabled() {
+        return circuitBreakerErrors > 0 || outlierDetection.consecutiveGatewayErrors() > 0
+                || outlierDetection.consecutiveLocalOriginFailures() > 0;
+    }
+
+    /**
+     * Matches created from properties do not implement equals, so they are compared by their values
+     * @return the values of the matches
+     */
+    public List<String> matchKeys() {
+        return matches.stream()
+                .map(m -> m.type() + ":" + m.mode() + ":" + m.key() + ":" + m.value() + ":" + m.ignoreUriCase())
+                .toList();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new IllegalArgumentException("Invalid Istio configuration: " + message);
+    }
+}
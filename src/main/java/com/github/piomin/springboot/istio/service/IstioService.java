@@ -1,9 +1,15 @@
 package com.github.piomin.springboot.istio.service;
 
+import com.github.piomin.springboot.istio.annotation.ConnectionPool;
 import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.annotation.H2UpgradePolicy;
+import com.github.piomin.springboot.istio.annotation.HashKey;
+import com.github.piomin.springboot.istio.annotation.LoadBalancer;
+import com.github.piomin.springboot.istio.annotation.LoadBalancerPolicy;
 import com.github.piomin.springboot.istio.annotation.Match;
 import com.github.piomin.springboot.istio.annotation.MatchMode;
 import com.github.piomin.springboot.istio.annotation.MatchType;
+import com.github.piomin.springboot.istio.annotation.OutlierDetection;
 import com.github.piomin.springboot.istio.annotation.FaultType;
 import com.github.piomin.springboot.istio.config.IstioProperties;
 import io.fabric8.istio.api.api.networking.v1alpha3.*;
@@ -12,18 +18,22 @@ import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
-import java.lang.annotation.Annotation;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.apache.commons.lang3.time.DurationFormatUtils.formatDuration;
 
 public class IstioService {
 
     private static final String RETRY_CODES = "5xx";
-    private static final String CIRCUIT_OPEN_TIME = "30s";
-    private static final int MAX_DISABLED_HOSTS_PERCENTAGE = 100;
 
     @Value("${spring.application.name}")
     private Optional<String> applicationName;
@@ -31,6 +41,23 @@ public class IstioService {
     @Autowired(required = false)
     private IstioProperties properties;
 
+    private final Map<EnableIstio, IstioConfig> resolved = new ConcurrentHashMap<>();
+    private volatile TimeoutOverride timeoutOverride;
+    private volatile Integer weightOverride;
+
+    public IstioService() {
+    }
+
+    /**
+     * Creates the service outside of the application context, e.g. at build time
+     * @param applicationName name of the application, {@code default} if null
+     * @param properties properties overriding the annotation, may be null
+     */
+    public IstioService(String applicationName, IstioProperties properties) {
+        this.applicationName = Optional.ofNullable(applicationName);
+        this.properties = properties;
+    }
+
     public String getApplicationName() {
         return applicationName.orElse("default");
     }
@@ -43,73 +70,264 @@ public class IstioService {
         return getApplicationName() + "-route";
     }
 
+    /**
+     * Resolves the configuration of the annotation, overridden by {@link IstioProperties} if set.
+     * The result is cached until the annotation or properties change.
+     * @param e annotation to resolve
+     * @return validated configuration
+     */
+    public IstioConfig resolve(EnableIstio e) {
+        return resolved.computeIfAbsent(e, this::doResolve);
+    }
+
+    /**
+     * Resolves several annotations declared in the application, each of them describing a separate HTTP route.
+     * Settings shared by the whole resources have to be the same in all annotations.
+     * @param declarations annotations in a stable order, e.g. sorted by bean name
+     * @return configurations in the order of HTTP routes, routes without matches go last
+     * @throws IllegalStateException if declarations conflict
+     */
+    public List<IstioConfig> resolveAll(List<EnableIstio> declarations) {
+        if (declarations.isEmpty())
+            throw new IllegalArgumentException("No @EnableIstio declaration to resolve");
+        if (declarations.size() == 1)
+            return List.of(resolve(declarations.get(0)));
+        List<IstioConfig> configs = new ArrayList<>(declarations.size());
+        Map<List<String>, Integer> matches = new HashMap<>();
+        for (int i = 0; i < declarations.size(); i++) {
+            IstioConfig config = resolve(declarations.get(i));
+            if (i > 0) {
+                IstioConfig first = configs.get(0);
+                checkShared(declarations, i, "version", first.version(), config.version());
+                checkShared(declarations, i, "circuitBreakerErrors", first.circuitBreakerErrors(), config.circuitBreakerErrors());
+                checkShared(declarations, i, "enableGateway", first.enableGateway(), config.enableGateway());
+                checkShared(declarations, i, "domain", first.domain(), config.domain());
+                checkShared(declarations, i, "connectionPool", first.connectionPool(), config.connectionPool());
+                checkShared(declarations, i, "loadBalancer", first.loadBalancer(), config.loadBalancer());
+                checkShared(declarations, i, "outlierDetection", first.outlierDetection(), config.outlierDetection());
+            }
+            Integer duplicate = matches.putIfAbsent(config.matchKeys(), i);
+            if (duplicate != null)
+                throw new IllegalStateException("Conflicting @EnableIstio declarations: " + declarations.get(duplicate)
+                        + " and " + declarations.get(i) + " have the same matches");
+            configs.add(config);
+        }
+        // a route without matches accepts every request, so it must not hide the other routes
+        configs.sort(Comparator.comparing(config -> config.matches().isEmpty()));
+        return List.copyOf(configs);
+    }
+
+    private void checkShared(List<EnableIstio> declarations, int index, String field, Object expected, Object actual) {
+        if (!Objects.equals(expected, actual))
+            throw new IllegalStateException("Conflicting @EnableIstio declarations: " + field + " is " + expected
+                    + " in " + declarations.get(0) + " and " + actual + " in " + declarations.get(index));
+    }
+
+    /**
+     * Drops the cached configuration, so it is resolved again from the current {@link IstioProperties}
+     */
+    public void refresh() {
+        resolved.clear();
+    }
+
+    /**
+     * Replaces the timeouts of all routes, e.g. with the values derived from the measured latency
+     * @param override timeouts to apply, null restores the configured ones
+     */
+    public void overrideTimeouts(TimeoutOverride override) {
+        this.timeoutOverride = override;
+        refresh();
+    }
+
+    public TimeoutOverride getTimeoutOverride() {
+        return timeoutOverride;
+    }
+
+    /**
+     * Replaces the weight of the version, e.g. with the current step of a canary rollout
+     * @param weight weight to apply, null restores the configured one
+     */
+    public void overrideWeight(Integer weight) {
+        this.weightOverride = weight;
+        refresh();
+    }
+
+    public Integer getWeightOverride() {
+        return weightOverride;
+    }
+
+    private IstioConfig doResolve(EnableIstio e) {
+        TimeoutOverride override = timeoutOverride;
+        Integer weight = weightOverride;
+        IstioProperties.FaultProperties fault = properties != null ? properties.getFault() : null;
+        return new IstioConfig(
+                override != null ? (int) override.timeout() :
+                        properties != null && properties.getTimeout() != null ? properties.getTimeout() : e.timeout(),
+                properties != null && properties.getVersion() != null ? properties.getVersion() : e.version(),
+                weight != null ? weight :
+                        properties != null && properties.getWeight() != null ? properties.getWeight() : e.weight(),
+                properties != null && properties.getNumberOfRetries() != null ? properties.getNumberOfRetries() : e.numberOfRetries(),
+                properties != null && properties.getCircuitBreakerErrors() != null ? properties.getCircuitBreakerErrors() : e.circuitBreakerErrors(),
+                properties != null && properties.getEnableGateway() != null ? properties.getEnableGateway() : e.enableGateway(),
+                properties != null && properties.getDomain() != null ? properties.getDomain() : e.domain(),
+                resolveMatches(e),
+                fault != null && fault.getType() != null ? fault.getType() : e.fault() != null ? e.fault().type() : FaultType.ABORT,
+                fault != null && fault.getPercentage() != null ? fault.getPercentage() : e.fault() != null ? e.fault().percentage() : 0,
+                fault != null && fault.getHttpStatus() != null ? fault.getHttpStatus() : e.fault() != null ? e.fault().httpStatus() : 500,
+                fault != null && fault.getDelay() != null ? fault.getDelay() : e.fault() != null ? e.fault().delay() : 0,
+                resolveConnectionPool(e),
+                resolveLoadBalancer(e),
+                resolveOutlierDetection(e),
+                override != null ? override.perTryTimeout() : 0);
+    }
+
+    private OutlierDetectionConfig resolveOutlierDetection(EnableIstio e) {
+        IstioProperties.OutlierDetectionProperties od = properties != null ? properties.getOutlierDetection() : null;
+        OutlierDetection a = e.outlierDetection();
+        OutlierDetectionConfig d = OutlierDetectionConfig.DEFAULT;
+        if (od == null && a == null)
+            return d;
+        return new OutlierDetectionConfig(
+                od != null && od.getInterval() != null ? od.getInterval() : a != null ? a.interval() : d.interval(),
+                od != null && od.getBaseEjectionTime() != null ? od.getBaseEjectionTime() : a != null ? a.baseEjectionTime() : d.baseEjectionTime(),
+                od != null && od.getMaxEjectionPercent() != null ? od.getMaxEjectionPercent() : a != null ? a.maxEjectionPercent() : d.maxEjectionPercent(),
+                od != null && od.getMinHealthPercent() != null ? od.getMinHealthPercent() : a != null ? a.minHealthPercent() : d.minHealthPercent(),
+                od != null && od.getConsecutiveGatewayErrors() != null ? od.getConsecutiveGatewayErrors() : a != null ? a.consecutiveGatewayErrors() : d.consecutiveGatewayErrors(),
+                od != null && od.getConsecutiveLocalOriginFailures() != null ? od.getConsecutiveLocalOriginFailures() : a != null ? a.consecutiveLocalOriginFailures() : d.consecutiveLocalOriginFailures(),
+                od != null && od.getSplitExternalLocalOriginErrors() != null ? od.getSplitExternalLocalOriginErrors() : a != null ? a.splitExternalLocalOriginErrors() : d.splitExternalLocalOriginErrors());
+    }
+
+    private LoadBalancerConfig resolveLoadBalancer(EnableIstio e) {
+        IstioProperties.LoadBalancerProperties lb = properties != null ? properties.getLoadBalancer() : null;
+        LoadBalancer a = e.loadBalancer();
+        if (lb == null && a == null)
+            return LoadBalancerConfig.DEFAULT;
+        return new LoadBalancerConfig(
+                lb != null && lb.getPolicy() != null ? lb.getPolicy() : a != null ? a.policy() : LoadBalancerPolicy.DEFAULT,
+                lb != null && lb.getHashKey() != null ? lb.getHashKey() : a != null ? a.hashKey() : HashKey.NONE,
+                lb != null && lb.getHashKeyName() != null ? lb.getHashKeyName() : a != null ? a.hashKeyName() : "",
+                lb != null && lb.getCookieTtl() != null ? lb.getCookieTtl() : a != null ? a.cookieTtl() : 0,
+                lb != null && lb.getRingSize() != null ? lb.getRingSize() : a != null ? a.ringSize() : 0);
+    }
+
+    private ConnectionPoolConfig resolveConnectionPool(EnableIstio e) {
+        IstioProperties.ConnectionPoolProperties pool = properties != null ? properties.getConnectionPool() : null;
+        ConnectionPool a = e.connectionPool();
+        if (pool == null && a == null)
+            return ConnectionPoolConfig.DEFAULT;
+        return new ConnectionPoolConfig(
+                pool != null && pool.getMaxConnections() != null ? pool.getMaxConnections() : a != null ? a.maxConnections() : 0,
+                pool != null && pool.getConnectTimeout() != null ? pool.getConnectTimeout() : a != null ? a.connectTimeout() : 0,
+                pool != null && pool.getTcpKeepaliveProbes() != null ? pool.getTcpKeepaliveProbes() : a != null ? a.tcpKeepaliveProbes() : 0,
+                pool != null && pool.getTcpKeepaliveTime() != null ? pool.getTcpKeepaliveTime() : a != null ? a.tcpKeepaliveTime() : 0,
+                pool != null && pool.getTcpKeepaliveInterval() != null ? pool.getTcpKeepaliveInterval() : a != null ? a.tcpKeepaliveInterval() : 0,
+                pool != null && pool.getHttp1MaxPendingRequests() != null ? pool.getHttp1MaxPendingRequests() : a != null ? a.http1MaxPendingRequests() : 0,
+                pool != null && pool.getHttp2MaxRequests() != null ? pool.getHttp2MaxRequests() : a != null ? a.http2MaxRequests() : 0,
+                pool != null && pool.getMaxRequestsPerConnection() != null ? pool.getMaxRequestsPerConnection() : a != null ? a.maxRequestsPerConnection() : 0,
+                pool != null && pool.getMaxRetries() != null ? pool.getMaxRetries() : a != null ? a.maxRetries() : 0,
+                pool != null && pool.getIdleTimeout() != null ? pool.getIdleTimeout() : a != null ? a.idleTimeout() : 0,
+                pool != null && pool.getH2UpgradePolicy() != null ? pool.getH2UpgradePolicy() : a != null ? a.h2UpgradePolicy() : H2UpgradePolicy.DEFAULT);
+    }
+
+    private List<Match> resolveMatches(EnableIstio e) {
+        List<Match> matches = properties != null && !properties.getMatches().isEmpty() ?
+                properties.getMatches().stream().map(this::toMatch).toList() :
+                Arrays.stream(e.matches()).filter(Objects::nonNull).toList();
+        if (properties != null && !properties.isOptimizeMatches())
+            return matches;
+        return MatchOptimizer.optimize(matches);
+    }
+
     public int getTimeout(EnableIstio e) {
-        return properties != null && properties.getTimeout() != null ? properties.getTimeout() : e.timeout();
+        return resolve(e).timeout();
     }
 
     public String getVersion(EnableIstio e) {
-        return properties != null && properties.getVersion() != null ? properties.getVersion() : e.version();
+        return resolve(e).version();
     }
 
     public int getWeight(EnableIstio e) {
-        return properties != null && properties.getWeight() != null ? properties.getWeight() : e.weight();
+        return resolve(e).weight();
     }
 
     public int getNumberOfRetries(EnableIstio e) {
-        return properties != null && properties.getNumberOfRetries() != null ? properties.getNumberOfRetries() : e.numberOfRetries();
+        return resolve(e).numberOfRetries();
     }
 
     public int getCircuitBreakerErrors(EnableIstio e) {
-        return properties != null && properties.getCircuitBreakerErrors() != null ? properties.getCircuitBreakerErrors() : e.circuitBreakerErrors();
+        return resolve(e).circuitBreakerErrors();
     }
 
     public boolean isEnableGateway(EnableIstio e) {
-        return properties != null && properties.getEnableGateway() != null ? properties.getEnableGateway() : e.enableGateway();
+        return resolve(e).enableGateway();
     }
 
     public String getDomain(EnableIstio e) {
-        return properties != null && properties.getDomain() != null ? properties.getDomain() : e.domain();
+        return resolve(e).domain();
     }
 
     public int getFaultPercentage(EnableIstio e) {
-        if (properties != null && properties.getFault() != null && properties.getFault().getPercentage() != null)
-            return properties.getFault().getPercentage();
-        return e.fault() != null ? e.fault().percentage() : 0;
-    }
-
-    private FaultType getFaultType(EnableIstio e) {
-        if (properties != null && properties.getFault() != null && properties.getFault().getType() != null)
-            return properties.getFault().getType();
-        return e.fault() != null ? e.fault().type() : FaultType.ABORT;
+        return resolve(e).faultPercentage();
     }
 
-    private int getFaultHttpStatus(EnableIstio e) {
-        if (properties != null && properties.getFault() != null && properties.getFault().getHttpStatus() != null)
-            return properties.getFault().getHttpStatus();
-        return e.fault() != null ? e.fault().httpStatus() : 500;
+    public Match[] getMatches(EnableIstio e) {
+        return resolve(e).matches().toArray(new Match[0]);
     }
 
-    private long getFaultDelay(EnableIstio e) {
-        if (properties != null && properties.getFault() != null && properties.getFault().getDelay() != null)
-            return properties.getFault().getDelay();
-        return e.fault() != null ? e.fault().delay() : 0;
+    private Match toMatch(IstioProperties.MatchProperties mp) {
+        return MatchOptimizer.match(mp.getType(), mp.getMode(), mp.getValue(), mp.getKey(), mp.isIgnoreUriCase());
     }
 
-    public Match[] getMatches(EnableIstio e) {
-        if (properties != null && !properties.getMatches().isEmpty())
-            return properties.getMatches().stream().map(this::toMatch).toArray(Match[]::new);
-        return e.matches();
+    /**
+     * Tells where each configuration value comes from
+     * @return source of each value: {@code properties} if set in {@link IstioProperties}, otherwise {@code annotation}
+     */
+    public Map<String, String> getConfigurationSources() {
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("timeout", timeoutOverride != null ? "adaptive" : source(properties != null ? properties.getTimeout() : null));
+        sources.put("version", source(properties != null ? properties.getVersion() : null));
+        sources.put("weight", weightOverride != null ? "canary" : source(properties != null ? properties.getWeight() : null));
+        sources.put("numberOfRetries", source(properties != null ? properties.getNumberOfRetries() : null));
+        sources.put("circuitBreakerErrors", source(properties != null ? properties.getCircuitBreakerErrors() : null));
+        sources.put("enableGateway", source(properties != null ? properties.getEnableGateway() : null));
+        sources.put("domain", source(properties != null ? properties.getDomain() : null));
+        sources.put("matches", properties != null && !properties.getMatches().isEmpty() ? "properties" : "annotation");
+        IstioProperties.FaultProperties fault = properties != null ? properties.getFault() : null;
+        sources.put("fault.type", source(fault != null ? fault.getType() : null));
+        sources.put("fault.percentage", source(fault != null ? fault.getPercentage() : null));
+        sources.put("fault.httpStatus", source(fault != null ? fault.getHttpStatus() : null));
+        sources.put("fault.delay", source(fault != null ? fault.getDelay() : null));
+        IstioProperties.ConnectionPoolProperties pool = properties != null ? properties.getConnectionPool() : null;
+        sources.put("connectionPool.maxConnections", source(pool != null ? pool.getMaxConnections() : null));
+        sources.put("connectionPool.connectTimeout", source(pool != null ? pool.getConnectTimeout() : null));
+        sources.put("connectionPool.tcpKeepaliveProbes", source(pool != null ? pool.getTcpKeepaliveProbes() : null));
+        sources.put("connectionPool.tcpKeepaliveTime", source(pool != null ? pool.getTcpKeepaliveTime() : null));
+        sources.put("connectionPool.tcpKeepaliveInterval", source(pool != null ? pool.getTcpKeepaliveInterval() : null));
+        sources.put("connectionPool.http1MaxPendingRequests", source(pool != null ? pool.getHttp1MaxPendingRequests() : null));
+        sources.put("connectionPool.http2MaxRequests", source(pool != null ? pool.getHttp2MaxRequests() : null));
+        sources.put("connectionPool.maxRequestsPerConnection", source(pool != null ? pool.getMaxRequestsPerConnection() : null));
+        sources.put("connectionPool.maxRetries", source(pool != null ? pool.getMaxRetries() : null));
+        sources.put("connectionPool.idleTimeout", source(pool != null ? pool.getIdleTimeout() : null));
+        sources.put("connectionPool.h2UpgradePolicy", source(pool != null ? pool.getH2UpgradePolicy() : null));
+        IstioProperties.LoadBalancerProperties lb = properties != null ? properties.getLoadBalancer() : null;
+        sources.put("loadBalancer.policy", source(lb != null ? lb.getPolicy() : null));
+        sources.put("loadBalancer.hashKey", source(lb != null ? lb.getHashKey() : null));
+        sources.put("loadBalancer.hashKeyName", source(lb != null ? lb.getHashKeyName() : null));
+        sources.put("loadBalancer.cookieTtl", source(lb != null ? lb.getCookieTtl() : null));
+        sources.put("loadBalancer.ringSize", source(lb != null ? lb.getRingSize() : null));
+        IstioProperties.OutlierDetectionProperties od = properties != null ? properties.getOutlierDetection() : null;
+        sources.put("outlierDetection.interval", source(od != null ? od.getInterval() : null));
+        sources.put("outlierDetection.baseEjectionTime", source(od != null ? od.getBaseEjectionTime() : null));
+        sources.put("outlierDetection.maxEjectionPercent", source(od != null ? od.getMaxEjectionPercent() : null));
+        sources.put("outlierDetection.minHealthPercent", source(od != null ? od.getMinHealthPercent() : null));
+        sources.put("outlierDetection.consecutiveGatewayErrors", source(od != null ? od.getConsecutiveGatewayErrors() : null));
+        sources.put("outlierDetection.consecutiveLocalOriginFailures", source(od != null ? od.getConsecutiveLocalOriginFailures() : null));
+        sources.put("outlierDetection.splitExternalLocalOriginErrors", source(od != null ? od.getSplitExternalLocalOriginErrors() : null));
+        return sources;
     }
 
-    private Match toMatch(IstioProperties.MatchProperties mp) {
-        return new Match() {
-            @Override public Class<? extends Annotation> annotationType() { return Match.class; }
-            @Override public boolean ignoreUriCase() { return mp.isIgnoreUriCase(); }
-            @Override public MatchType type() { return mp.getType(); }
-            @Override public MatchMode mode() { return mp.getMode(); }
-            @Override public String value() { return mp.getValue(); }
-            @Override public String key() { return mp.getKey(); }
-        };
+    private String source(Object propertyValue) {
+        return propertyValue != null ? "properties" : "annotation";
     }
 
     public ObjectMeta buildDestinationRuleMetadata() {
@@ -117,22 +335,143 @@ public class IstioService {
     }
 
     public TrafficPolicy buildCircuitBreaker(EnableIstio enableIstio) {
+        return buildCircuitBreaker(resolve(enableIstio));
+    }
+
+    public TrafficPolicy buildCircuitBreaker(IstioConfig config) {
         TrafficPolicyBuilder builder = new TrafficPolicyBuilder()
-                .withConnectionPool(new ConnectionPoolSettingsBuilder().withNewHttp().endHttp().build());
-        if (getCircuitBreakerErrors(enableIstio) == 0)
+                .withConnectionPool(buildConnectionPool(config))
+                .withLoadBalancer(buildLoadBalancer(config));
+        if (!config.isOutlierDetectionEnabled())
             return builder.build();
-        else return builder.withOutlierDetection(new OutlierDetectionBuilder()
-                        .withConsecutive5xxErrors(getCircuitBreakerErrors(enableIstio))
-                        .withBaseEjectionTime(CIRCUIT_OPEN_TIME)
-                        .withMaxEjectionPercent(MAX_DISABLED_HOSTS_PERCENTAGE)
+        OutlierDetectionConfig od = config.outlierDetection();
+        // 0 is written explicitly, otherwise Envoy ejects hosts after 5 consecutive 5xx errors by default
+        return builder.withOutlierDetection(new OutlierDetectionBuilder()
+                        .withConsecutive5xxErrors(config.circuitBreakerErrors())
+                        .withConsecutiveGatewayErrors(od.consecutiveGatewayErrors() > 0 ? od.consecutiveGatewayErrors() : null)
+                        .withConsecutiveLocalOriginFailures(od.consecutiveLocalOriginFailures() > 0 ? od.consecutiveLocalOriginFailures() : null)
+                        .withSplitExternalLocalOriginErrors(od.splitExternalLocalOriginErrors() ? true : null)
+                        .withInterval(formatMillis(od.interval()))
+                        .withBaseEjectionTime(formatMillis(od.baseEjectionTime()))
+                        .withMaxEjectionPercent(od.maxEjectionPercent())
+                        .withMinHealthPercent(od.minHealthPercent())
                         .build())
                 .build();
     }
 
+    public ConnectionPoolSettings buildConnectionPool(EnableIstio enableIstio) {
+        return buildConnectionPool(resolve(enableIstio));
+    }
+
+    /**
+     * Builds the connection pool settings, only the values set are written, the others keep the Envoy defaults
+     * @param config resolved configuration
+     * @return connection pool settings
+     */
+    public ConnectionPoolSettings buildConnectionPool(IstioConfig config) {
+        ConnectionPoolConfig pool = config.connectionPool();
+        ConnectionPoolSettingsBuilder builder = new ConnectionPoolSettingsBuilder();
+        if (pool.maxConnections() > 0 || pool.connectTimeout() > 0 || pool.hasTcpKeepalive()) {
+            builder = builder.withNewTcp()
+                    .withMaxConnections(positive(pool.maxConnections()))
+                    .withConnectTimeout(duration(pool.connectTimeout()))
+                    .withTcpKeepalive(!pool.hasTcpKeepalive() ? null : new ConnectionPoolSettingsTCPSettingsTcpKeepaliveBuilder()
+                            .withProbes(positive(pool.tcpKeepaliveProbes()))
+                            .withTime(duration(pool.tcpKeepaliveTime()))
+                            .withInterval(duration(pool.tcpKeepaliveInterval()))
+                            .build())
+                    .endTcp();
+        }
+        return builder.withNewHttp()
+                .withHttp1MaxPendingRequests(positive(pool.http1MaxPendingRequests()))
+                .withHttp2MaxRequests(positive(pool.http2MaxRequests()))
+                .withMaxRequestsPerConnection(positive(pool.maxRequestsPerConnection()))
+                .withMaxRetries(positive(pool.maxRetries()))
+                .withIdleTimeout(duration(pool.idleTimeout()))
+                .withH2UpgradePolicy(pool.h2UpgradePolicy() == H2UpgradePolicy.DEFAULT ? null :
+                        ConnectionPoolSettingsHTTPSettingsH2UpgradePolicy.valueOf(pool.h2UpgradePolicy().name()))
+                .endHttp()
+                .build();
+    }
+
+    // values not set are left out of the spec, so Envoy keeps its defaults
+    private Integer positive(int value) {
+        return value > 0 ? value : null;
+    }
+
+    private String duration(long millis) {
+        return millis > 0 ? formatMillis(millis) : null;
+    }
+
+    public LoadBalancerSettings buildLoadBalancer(EnableIstio enableIstio) {
+        return buildLoadBalancer(resolve(enableIstio));
+    }
+
+    /**
+     * Builds the load balancer settings, either a simple policy or a consistent hash
+     * @param config resolved configuration
+     * @return load balancer settings, null if the policy is not set
+     */
+    public LoadBalancerSettings buildLoadBalancer(IstioConfig config) {
+        LoadBalancerConfig lb = config.loadBalancer();
+        if (lb.policy() == LoadBalancerPolicy.DEFAULT)
+            return null;
+        if (!lb.isConsistentHash())
+            return new LoadBalancerSettingsBuilder()
+                    .withLbPolicy(new LoadBalancerSettingsSimpleLbPolicy(LoadBalancerSettingsSimpleLB.valueOf(lb.policy().name())))
+                    .build();
+        LoadBalancerSettingsConsistentHashLBBuilder hashBuilder = new LoadBalancerSettingsConsistentHashLBBuilder();
+        switch (lb.hashKey()) {
+            case HEADER -> hashBuilder = hashBuilder
+                    .withNewLoadBalancerSettingsConsistentHashLBHttpHeaderNameKey(lb.hashKeyName());
+            case QUERY_PARAMETER -> hashBuilder = hashBuilder
+                    .withNewLoadBalancerSettingsConsistentHashLBHttpQueryParameterNameKey(lb.hashKeyName());
+            case SOURCE_IP -> hashBuilder = hashBuilder
+                    .withHashKey(new LoadBalancerSettingsConsistentHashLBUseSourceIpKey(true));
+            case COOKIE -> hashBuilder = hashBuilder
+                    .withHashKey(new LoadBalancerSettingsConsistentHashLBHttpCookieKey(new LoadBalancerSettingsConsistentHashLBHTTPCookieBuilder()
+                            .withName(lb.hashKeyName())
+                            .withTtl(duration(lb.cookieTtl()))
+                            .build()));
+            default -> throw new IllegalStateException("Unexpected hash key: " + lb.hashKey());
+        }
+        Long ringSize = lb.ringSize() > 0 ? lb.ringSize() : null;
+        if (lb.policy() == LoadBalancerPolicy.MAGLEV)
+            hashBuilder = hashBuilder.withHashAlgorithm(new LoadBalancerSettingsConsistentHashLBMaglevAlgorithm(
+                    new LoadBalancerSettingsConsistentHashLBMagLevBuilder().withTableSize(ringSize).build()));
+        else
+            hashBuilder = hashBuilder.withHashAlgorithm(new LoadBalancerSettingsConsistentHashLBRingHashAlgorithm(
+                    new LoadBalancerSettingsConsistentHashLBRingHashBuilder().withMinimumRingSize(ringSize).build()));
+        return new LoadBalancerSettingsBuilder()
+                .withLbPolicy(new LoadBalancerSettingsConsistentHashLbPolicy(hashBuilder.build()))
+                .build();
+    }
+
+    /**
+     * @param config resolved configuration
+     * @return route timeout, null if disabled
+     */
+    public String buildTimeout(IstioConfig config) {
+        return config.timeout() == 0 ? null : formatTimeout(config.timeout());
+    }
+
+    // whole seconds as before, sub-second timeouts would be truncated to 0s
+    private String formatTimeout(long millis) {
+        return millis < 1000 ? millis + "ms" : formatDuration(millis, "s's'");
+    }
+
+    private String formatMillis(long millis) {
+        return millis % 1000 == 0 ? millis / 1000 + "s" : millis + "ms";
+    }
+
     public Subset buildSubset(EnableIstio enableIstio) {
+        return buildSubset(resolve(enableIstio));
+    }
+
+    public Subset buildSubset(IstioConfig config) {
         return new SubsetBuilder()
-                .withName(getVersion(enableIstio))
-                .addToLabels("version", getVersion(enableIstio))
+                .withName(config.version())
+                .addToLabels("version", config.version())
                 .build();
     }
 
@@ -161,63 +500,83 @@ public class IstioService {
     }
 
     public HTTPRetry buildRetry(EnableIstio enableIstio) {
-        if (getNumberOfRetries(enableIstio) == 0)
+        return buildRetry(resolve(enableIstio));
+    }
+
+    public HTTPRetry buildRetry(IstioConfig config) {
+        if (config.numberOfRetries() == 0)
             return null;
-        long ratioTimeout = Math.round((float) getTimeout(enableIstio) / getNumberOfRetries(enableIstio));
+        long perTryTimeout = config.perTryTimeout() > 0 ? config.perTryTimeout() :
+                Math.round((float) config.timeout() / config.numberOfRetries());
         return new HTTPRetryBuilder()
-                .withAttempts(getNumberOfRetries(enableIstio))
+                .withAttempts(config.numberOfRetries())
                 .withRetryOn(RETRY_CODES)
-                .withPerTryTimeout(getTimeout(enableIstio) != 0 ?
-                        formatDuration(ratioTimeout, "s's'") : null)
+                .withPerTryTimeout(config.timeout() != 0 ? formatTimeout(perTryTimeout) : null)
                 .build();
     }
 
     public Destination buildDestination(EnableIstio enableIstio) {
+        return buildDestination(resolve(enableIstio));
+    }
+
+    public Destination buildDestination(IstioConfig config) {
         return new DestinationBuilder()
                 .withHost(getApplicationName())
-                .withSubset(getVersion(enableIstio))
+                .withSubset(config.version())
                 .build();
     }
 
     public HTTPRouteDestination buildRouteDestination(EnableIstio enableIstio) {
+        return buildRouteDestination(resolve(enableIstio));
+    }
+
+    public HTTPRouteDestination buildRouteDestination(IstioConfig config) {
         return new HTTPRouteDestinationBuilder()
-                .withDestination(buildDestination(enableIstio))
-                .withWeight(getWeight(enableIstio))
+                .withDestination(buildDestination(config))
+                .withWeight(config.weight())
                 .build();
     }
 
     public HTTPFaultInjection buildFault(EnableIstio enableIstio) {
-        if (getFaultType(enableIstio).equals(FaultType.ABORT))
+        return buildFault(resolve(enableIstio));
+    }
+
+    public HTTPFaultInjection buildFault(IstioConfig config) {
+        if (config.faultType().equals(FaultType.ABORT))
             return new HTTPFaultInjectionBuilder()
                     .withNewAbort()
                     .withNewPercentage()
-                        .withValue((double) getFaultPercentage(enableIstio))
+                        .withValue((double) config.faultPercentage())
                     .endPercentage()
-                    .withNewHTTPFaultInjectionAbortHttpStatusErrorType(getFaultHttpStatus(enableIstio))
+                    .withNewHTTPFaultInjectionAbortHttpStatusErrorType(config.faultHttpStatus())
                     .endAbort()
                     .build();
         else
             return new HTTPFaultInjectionBuilder()
                     .withNewDelay()
                     .withNewPercentage()
-                        .withValue((double) getFaultPercentage(enableIstio))
+                        .withValue((double) config.faultPercentage())
                     .endPercentage()
                     .withNewHTTPFaultInjectionDelayFixedDelayHttpType()
-                        .withFixedDelay(formatDuration(getFaultDelay(enableIstio), "s's'"))
+                        .withFixedDelay(formatDuration(config.faultDelay(), "s's'"))
                     .endHTTPFaultInjectionDelayFixedDelayHttpType()
                     .endDelay()
                     .build();
     }
 
     public HTTPRoute buildRoute(EnableIstio enableIstio) {
+        return buildRoute(resolve(enableIstio));
+    }
+
+    public HTTPRoute buildRoute(IstioConfig config) {
         return new HTTPRouteBuilder()
-                .withMatch(Arrays.stream(getMatches(enableIstio))
+                .withMatch(config.matches().stream()
                         .map(this::buildHTTPMatchRequest)
                         .toArray(HTTPMatchRequest[]::new))
-                .withTimeout(getTimeout(enableIstio) == 0 ? null : formatDuration(getTimeout(enableIstio), "s's'"))
-                .withFault(getFaultPercentage(enableIstio) == 0 ? null : buildFault(enableIstio))
-                .withRetries(buildRetry(enableIstio))
-                .withRoute(buildRouteDestination(enableIstio))
+                .withTimeout(buildTimeout(config))
+                .withFault(config.faultPercentage() == 0 ? null : buildFault(config))
+                .withRetries(buildRetry(config))
+                .withRoute(buildRouteDestination(config))
                 .build();
     }
 
@@ -0,0 +1,18 @@
+package com.github.piomin.springboot.istio.service;
+
+import com.github.piomin.springboot.istio.annotation.HashKey;
+import com.github.piomin.springboot.istio.annotation.LoadBalancerPolicy;
+
+/**
+ * Load balancer settings resolved from {@code @LoadBalancer} and {@code istio.spring.load-balancer.*} properties
+ */
+public record LoadBalancerConfig(LoadBalancerPolicy policy, HashKey hashKey, String hashKeyName,
+                                 long cookieTtl, long ringSize) {
+
+    public static final LoadBalancerConfig DEFAULT =
+            new LoadBalancerConfig(LoadBalancerPolicy.DEFAULT, HashKey.NONE, "", 0, 0);
+
+    public boolean isConsistentHash() {
+        return policy == LoadBalancerPolicy.RING_HASH || policy == LoadBalancerPolicy.MAGLEV;
+    }
+}
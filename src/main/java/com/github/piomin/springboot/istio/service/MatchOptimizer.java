@@ -0,0 +1,191 @@
+package com.github.piomin.springboot.istio.service;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.github.piomin.springboot.istio.annotation.Match;
+import com.github.piomin.springboot.istio.annotation.MatchMode;
+import com.github.piomin.springboot.istio.annotation.MatchType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rewrites matches, so Envoy evaluates them at a lower cost.
+ * Matches of a single route are alternatives, so removing a match covered by another one does not change routing.
+ * <ul>
+ *     <li>regexes that are really literal values or prefixes become {@code EXACT} or {@code PREFIX} matches</li>
+ *     <li>duplicates and matches covered by a shorter prefix are removed</li>
+ *     <li>the remaining matches are ordered from the cheapest to the most expensive</li>
+ * </ul>
+ */
+public final class MatchOptimizer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MatchOptimizer.class);
+    private static final String REGEX_META = ".^$*+?()[]{}|\\";
+    // lookarounds, atomic groups, backreferences and possessive quantifiers are not supported by RE2,
+    // other escapes are matched (group 1) and skipped, so an escaped character is not taken for an operator
+    private static final Pattern UNSUPPORTED_RE2 =
+            Pattern.compile("\\\\[1-9]|(\\\\.)|\\(\\?(?:=|!|<=|<!|>)|[*+?}]\\+");
+    private static final Pattern REPEAT = Pattern.compile("\\{(\\d+)(?:,(\\d*))?}");
+    private static final int MAX_RE2_REPEAT = 1000;
+
+    private MatchOptimizer() {
+    }
+
+    /**
+     * @param matches matches of a single route
+     * @return optimized matches, equivalent to the input ones
+     */
+    public static List<Match> optimize(List<Match> matches) {
+        Map<Key, Match> distinct = new LinkedHashMap<>();
+        for (Match match : matches) {
+            Match rewritten = rewrite(match);
+            distinct.putIfAbsent(Key.of(rewritten), rewritten);
+        }
+        Map<Group, Set<String>> prefixes = new HashMap<>();
+        for (Match match : distinct.values()) {
+            if (isStringMatch(match.type()) && match.mode() == MatchMode.PREFIX)
+                prefixes.computeIfAbsent(Group.of(match), g -> new HashSet<>()).add(match.value());
+        }
+        List<Match> optimized = new ArrayList<>(distinct.size());
+        for (Match match : distinct.values()) {
+            if (isSubsumed(match, prefixes.get(Group.of(match))))
+                LOGGER.debug("Match {} {} removed, it is covered by a shorter prefix", match.type(), match.value());
+            else
+                optimized.add(match);
+        }
+        optimized.sort(Comparator.comparingInt(MatchOptimizer::cost));
+        if (optimized.size() < matches.size())
+            LOGGER.info("Istio matches optimized: {} -> {}", matches.size(), optimized.size());
+        return optimized;
+    }
+
+    /**
+     * Creates a match with the given fields
+     */
+    public static Match match(MatchType type, MatchMode mode, String value, String key, boolean ignoreUriCase) {
+        return new Match() {
+            @Override public Class<? extends Annotation> annotationType() { return Match.class; }
+            @Override public boolean ignoreUriCase() { return ignoreUriCase; }
+            @Override public MatchType type() { return type; }
+            @Override public MatchMode mode() { return mode; }
+            @Override public String value() { return value; }
+            @Override public String key() { return key; }
+        };
+    }
+
+    private static Match rewrite(Match match) {
+        if (!isStringMatch(match.type()) || match.mode() != MatchMode.REGEX)
+            return match;
+        // ignoreUriCase applies to exact and prefix matches only, so rewriting a regex would change its meaning
+        if (match.type() == MatchType.URI && match.ignoreUriCase()) {
+            warnIfComplex(match.value());
+            return match;
+        }
+        // Envoy matches the whole value against the regex, so anchors are redundant
+        String body = match.value();
+        if (body.startsWith("^"))
+            body = body.substring(1);
+        if (body.endsWith("$") && !body.endsWith("\\$"))
+            body = body.substring(0, body.length() - 1);
+        if (body.endsWith(".*") && !body.endsWith("\\.*")) {
+            String prefix = literal(body.substring(0, body.length() - 2));
+            // query parameters do not support prefix matches
+            if (prefix != null && !prefix.isEmpty() && match.type() != MatchType.QUERY_PARAMS)
+                return rewritten(match, MatchMode.PREFIX, prefix);
+        } else {
+            String exact = literal(body);
+            if (exact != null)
+                return rewritten(match, MatchMode.EXACT, exact);
+        }
+        warnIfComplex(match.value());
+        return match;
+    }
+
+    private static Match rewritten(Match match, MatchMode mode, String value) {
+        LOGGER.debug("Regex match {} rewritten as {} {}", match.value(), mode, value);
+        return match(match.type(), mode, value, match.key(), match.ignoreUriCase());
+    }
+
+    private static String literal(String regex) {
+        StringBuilder literal = new StringBuilder(regex.length());
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 == regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1)))
+                    return null;
+                literal.append(regex.charAt(++i));
+            } else if (REGEX_META.indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.toString();
+    }
+
+    private static void warnIfComplex(String regex) {
+        Matcher unsupported = UNSUPPORTED_RE2.matcher(regex);
+        while (unsupported.find()) {
+            if (unsupported.group(1) == null) {
+                LOGGER.warn("Regex match {} uses constructs not supported by RE2, Envoy will reject it", regex);
+                return;
+            }
+        }
+        Matcher repeat = REPEAT.matcher(regex);
+        while (repeat.find()) {
+            String max = repeat.group(2) != null && !repeat.group(2).isEmpty() ? repeat.group(2) : repeat.group(1);
+            if (max.length() > 4 || Integer.parseInt(max) > MAX_RE2_REPEAT) {
+                LOGGER.warn("Regex match {} exceeds the RE2 repetition limit of {}", regex, MAX_RE2_REPEAT);
+                return;
+            }
+        }
+    }
+
+    private static boolean isSubsumed(Match match, Set<String> prefixes) {
+        if (prefixes == null || match.mode() == MatchMode.REGEX)
+            return false;
+        int length = match.mode() == MatchMode.PREFIX ? match.value().length() - 1 : match.value().length();
+        for (int i = 0; i <= length; i++) {
+            if (prefixes.contains(match.value().substring(0, i)))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isStringMatch(MatchType type) {
+        return type != MatchType.GATEWAYS && type != MatchType.SOURCE_LABELS;
+    }
+
+    private static int cost(Match match) {
+        if (!isStringMatch(match.type()))
+            return 0;
+        return switch (match.mode()) {
+            case EXACT -> 0;
+            case PREFIX -> 1;
+            case REGEX -> 2;
+        };
+    }
+
+    private record Key(MatchType type, MatchMode mode, String value, String key, boolean ignoreUriCase) {
+        static Key of(Match match) {
+            return new Key(match.type(), isStringMatch(match.type()) ? match.mode() : null, match.value(),
+                    match.key(), match.ignoreUriCase());
+        }
+    }
+
+    private record Group(MatchType type, String key, boolean ignoreUriCase) {
+        static Group of(Match match) {
+            return new Group(match.type(), match.key(), match.ignoreUriCase());
+        }
+    }
+}
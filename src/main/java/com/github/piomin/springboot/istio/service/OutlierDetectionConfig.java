@@ -0,0 +1,13 @@
+package com.github.piomin.springboot.istio.service;
+
+/**
+ * Outlier detection settings resolved from {@code @OutlierDetection} and {@code istio.spring.outlier-detection.*}
+ * properties. Durations are in milliseconds.
+ */
+public record OutlierDetectionConfig(long interval, long baseEjectionTime, int maxEjectionPercent, int minHealthPercent,
+                                     int consecutiveGatewayErrors, int consecutiveLocalOriginFailures,
+                                     boolean splitExternalLocalOriginErrors) {
+
+    public static final OutlierDetectionConfig DEFAULT =
+            new OutlierDetectionConfig(10000, 30000, 50, 50, 0, 0, false);
+}
@@ -0,0 +1,9 @@
+package com.github.piomin.springboot.istio.service;
+
+/**
+ * Timeouts in milliseconds replacing the configured ones, e.g. derived from the measured latency
+ * @param timeout route timeout
+ * @param perTryTimeout timeout of a single attempt
+ */
+public record TimeoutOverride(long timeout, long perTryTimeout) {
+}
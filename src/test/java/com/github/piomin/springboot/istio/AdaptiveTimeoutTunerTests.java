@@ -0,0 +1,57 @@
+package com.github.piomin.springboot.istio;
+
+import com.github.piomin.springboot.istio.config.IstioProperties;
+import com.github.piomin.springboot.istio.metrics.AdaptiveTimeoutTuner;
+import com.github.piomin.springboot.istio.service.TimeoutOverride;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveTimeoutTunerTests {
+
+    private final IstioProperties.AdaptiveTimeoutProperties properties = new IstioProperties.AdaptiveTimeoutProperties();
+
+    @Test
+    public void deriveWithHeadroom() {
+        TimeoutOverride timeouts = AdaptiveTimeoutTuner.derive(120, 400, 2, properties);
+        assertEquals(180, timeouts.perTryTimeout());
+        assertEquals(600, timeouts.timeout());
+    }
+
+    @Test
+    public void deriveCoversAllAttempts() {
+        TimeoutOverride timeouts = AdaptiveTimeoutTuner.derive(300, 500, 3, properties);
+        assertEquals(450, timeouts.perTryTimeout());
+        assertEquals(2000, timeouts.timeout());
+        assertEquals(900, AdaptiveTimeoutTuner.derive(300, 500, 1, properties).timeout());
+    }
+
+    @Test
+    public void deriveWithinBounds() {
+        TimeoutOverride timeouts = AdaptiveTimeoutTuner.derive(20000, 60000, 3, properties);
+        assertEquals(30000, timeouts.perTryTimeout());
+        assertEquals(30000, timeouts.timeout());
+        assertEquals(100, AdaptiveTimeoutTuner.derive(1, 2, 0, properties).perTryTimeout());
+    }
+
+    @Test
+    public void deriveWithinBoundsNotInWholeSeconds() {
+        properties.setMinTimeout(1500);
+        properties.setMaxTimeout(2500);
+        // timeouts of a second and more are written in whole seconds, so the bounds become 2000 and 2000
+        TimeoutOverride timeouts = AdaptiveTimeoutTuner.derive(20000, 60000, 3, properties);
+        assertEquals(2000, timeouts.perTryTimeout());
+        assertEquals(2000, timeouts.timeout());
+        assertEquals(2000, AdaptiveTimeoutTuner.derive(1, 2, 0, properties).perTryTimeout());
+    }
+
+    @Test
+    public void quantileFromHistogram() {
+        Map<Double, Double> buckets = Map.of(10.0, 900.0, 50.0, 990.0, 100.0, 999.0, 500.0, 1000.0);
+        assertEquals(50.0, AdaptiveTimeoutTuner.quantile(buckets, 1000, 0.99));
+        assertEquals(100.0, AdaptiveTimeoutTuner.quantile(buckets, 1000, 0.999));
+        assertEquals(500.0, AdaptiveTimeoutTuner.quantile(buckets, 2000, 0.99));
+    }
+}
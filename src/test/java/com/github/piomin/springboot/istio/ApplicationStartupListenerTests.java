@@ -0,0 +1,77 @@
+package com.github.piomin.springboot.istio;
+
+import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.config.IstioProperties;
+import com.github.piomin.springboot.istio.index.EnableIstioIndex;
+import com.github.piomin.springboot.istio.processor.ApplicationStartupListener;
+import com.github.piomin.springboot.istio.processor.EnableIstioAnnotationProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ApplicationStartupListenerTests {
+
+    @TempDir
+    Path dir;
+
+    private final EnableIstioAnnotationProcessor processor = mock(EnableIstioAnnotationProcessor.class);
+    private final IstioProperties properties = new IstioProperties();
+
+    @Test
+    public void annotationSearchFindsClassesMissingFromIndex() throws IOException {
+        ApplicationStartupListener listener = start();
+        List<EnableIstio> declarations = List.of(IndexedApp.class.getAnnotation(EnableIstio.class),
+                NotIndexedApp.class.getAnnotation(EnableIstio.class));
+        verify(processor).reconcile(declarations);
+        assertEquals(declarations, listener.getDeclarations());
+    }
+
+    @Test
+    public void indexUsedWhenEnabled() throws IOException {
+        properties.setUseIndex(true);
+        ApplicationStartupListener listener = start();
+        List<EnableIstio> declarations = List.of(IndexedApp.class.getAnnotation(EnableIstio.class));
+        verify(processor).reconcile(declarations);
+        assertEquals(declarations, listener.getDeclarations());
+    }
+
+    private ApplicationStartupListener start() throws IOException {
+        // e.g. the index of a shared library, the application itself compiled without the indexer
+        Path index = Files.writeString(dir.resolve("enable-istio.index"), IndexedApp.class.getName() + "\n");
+        URL indexUrl = index.toUri().toURL();
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.setClassLoader(new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                return name.equals(EnableIstioIndex.LOCATION) ? Collections.enumeration(List.of(indexUrl))
+                        : super.getResources(name);
+            }
+        });
+        context.registerBean("a", IndexedApp.class);
+        context.registerBean("b", NotIndexedApp.class);
+        context.refresh();
+        ApplicationStartupListener listener = new ApplicationStartupListener(context, processor, properties, null, null);
+        listener.onApplicationEvent(new ContextRefreshedEvent(context));
+        context.close();
+        return listener;
+    }
+
+    @EnableIstio(version = "v1")
+    static class IndexedApp {}
+
+    @EnableIstio(version = "v1", timeout = 1000)
+    static class NotIndexedApp {}
+}
@@ -0,0 +1,119 @@
+package com.github.piomin.springboot.istio;
+
+import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.config.IstioProperties;
+import com.github.piomin.springboot.istio.metrics.CanaryController;
+import com.github.piomin.springboot.istio.processor.ApplicationStartupListener;
+import com.github.piomin.springboot.istio.processor.EnableIstioAnnotationProcessor;
+import com.github.piomin.springboot.istio.service.IstioService;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CanaryControllerTests {
+
+    private final IstioProperties.CanaryProperties properties = new IstioProperties.CanaryProperties();
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final IstioService istioService = new IstioService("test1", null);
+    private final EnableIstioAnnotationProcessor processor = mock(EnableIstioAnnotationProcessor.class);
+
+    @Test
+    public void withinBudget() {
+        assertTrue(CanaryController.checkBudget(800, 0.005, properties).isEmpty());
+        assertTrue(CanaryController.checkBudget(1000, 0.01, properties).isEmpty());
+    }
+
+    @Test
+    public void latencyBreach() {
+        assertEquals("p99=1200.0ms above 1000ms", CanaryController.checkBudget(1200, 0, properties).orElseThrow());
+    }
+
+    @Test
+    public void errorRateBreach() {
+        properties.setMaxLatency(500);
+        assertEquals("error rate=0.02 above 0.01", CanaryController.checkBudget(100, 0.02, properties).orElseThrow());
+        assertTrue(CanaryController.checkBudget(600, 0.02, properties).orElseThrow().startsWith("p99"));
+    }
+
+    @Test
+    public void stepsForwardWithinBudget() {
+        try (CanaryController controller = createController()) {
+            assertEquals(0, istioService.getWeightOverride());
+            controller.advance();
+            assertEquals(5, istioService.getWeightOverride());
+            controller.advance();
+            assertEquals(5, istioService.getWeightOverride());
+            record("SUCCESS", 100);
+            controller.advance();
+            assertEquals(25, istioService.getWeightOverride());
+            verify(processor, times(2)).patchWeight(any());
+        }
+    }
+
+    @Test
+    public void rollbackRetriedUntilSucceeds() {
+        try (CanaryController controller = createController()) {
+            controller.advance();
+            record("SERVER_ERROR", 100);
+            doThrow(new KubernetesClientException("Service unavailable")).doNothing()
+                    .when(processor).rollbackWeight(any());
+            assertThrows(KubernetesClientException.class, controller::advance);
+            assertEquals(0, istioService.getWeightOverride());
+            record("SUCCESS", 1000);
+            controller.advance();
+            controller.advance();
+            assertEquals(0, istioService.getWeightOverride());
+            verify(processor, times(2)).rollbackWeight(any());
+            verify(processor, times(1)).patchWeight(any());
+        }
+    }
+
+    @Test
+    public void stopsWhenRolledBackByOtherReplica() {
+        try (CanaryController controller = createController()) {
+            controller.advance();
+            when(processor.isRolledBack(any())).thenReturn(true);
+            record("SUCCESS", 100);
+            controller.advance();
+            controller.advance();
+            assertEquals(0, istioService.getWeightOverride());
+            verify(processor, times(1)).patchWeight(any());
+            verify(processor, never()).rollbackWeight(any());
+        }
+    }
+
+    private CanaryController createController() {
+        properties.setInterval(3600000);
+        ApplicationStartupListener listener = mock(ApplicationStartupListener.class);
+        when(listener.getDeclarations()).thenReturn(List.of(CanaryApp.class.getAnnotation(EnableIstio.class)));
+        doNothing().when(processor).patchWeight(any());
+        return new CanaryController(registry, istioService, processor, listener, properties);
+    }
+
+    private void record(String outcome, int requests) {
+        Timer timer = Timer.builder("http.server.requests")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+        for (int i = 0; i < requests; i++)
+            timer.record(Duration.ofMillis(10));
+    }
+
+    @EnableIstio(version = "v2")
+    static class CanaryApp {}
+}
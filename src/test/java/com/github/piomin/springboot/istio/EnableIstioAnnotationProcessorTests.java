@@ -1,19 +1,40 @@
 package com.github.piomin.springboot.istio;
 
+import com.github.piomin.springboot.istio.annotation.ConnectionPool;
 import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.annotation.LoadBalancer;
 import com.github.piomin.springboot.istio.annotation.Match;
+import com.github.piomin.springboot.istio.annotation.OutlierDetection;
 import com.github.piomin.springboot.istio.annotation.Fault;
+import com.github.piomin.springboot.istio.config.IstioProperties;
 import com.github.piomin.springboot.istio.processor.EnableIstioAnnotationProcessor;
 import com.github.piomin.springboot.istio.service.IstioService;
+import io.fabric8.istio.api.api.networking.v1alpha3.HTTPRoute;
+import io.fabric8.istio.api.api.networking.v1alpha3.HTTPRouteDestination;
+import io.fabric8.istio.api.api.networking.v1alpha3.HTTPRouteDestinationBuilder;
+import io.fabric8.istio.api.api.networking.v1alpha3.Subset;
+import io.fabric8.istio.api.networking.v1beta1.DestinationRule;
+import io.fabric8.istio.api.networking.v1beta1.VirtualService;
 import io.fabric8.istio.client.DefaultIstioClient;
+import io.fabric8.kubernetes.api.model.HasMetadata;
 import io.fabric8.kubernetes.client.KubernetesClientException;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(classes = {IstioService.class, DefaultIstioClient.class, EnableIstioAnnotationProcessor.class},
         properties = "spring.application.name=test1")
@@ -28,6 +49,144 @@ public class EnableIstioAnnotationProcessorTests {
         assertThrows(KubernetesClientException.class, () -> processor.process(enableIstio));
     }
 
+    @Test
+    public void buildResources() {
+        List<HasMetadata> resources = processor.buildResources(List.of(createEnableIstio(1000, 3, "v1")));
+        assertEquals(List.of("DestinationRule", "VirtualService"),
+                resources.stream().map(HasMetadata::getKind).toList());
+        assertEquals("test1-route", resources.get(1).getMetadata().getName());
+        assertNotNull(resources.get(1).getMetadata().getAnnotations().get("istio.piomin.github.com/spec-hash"));
+    }
+
+    @Test
+    public void shiftWeight() {
+        List<HTTPRouteDestination> destinations = new ArrayList<>(List.of(destination("v1", 70), destination("v2", 30)));
+        EnableIstioAnnotationProcessor.shiftWeight(destinations, destination("v3", 25));
+        assertEquals(List.of(53, 22, 25), destinations.stream().map(HTTPRouteDestination::getWeight).toList());
+        EnableIstioAnnotationProcessor.shiftWeight(destinations, destination("v3", 0));
+        assertEquals(List.of(71, 29, 0), destinations.stream().map(HTTPRouteDestination::getWeight).toList());
+        EnableIstioAnnotationProcessor.shiftWeight(destinations, destination("v3", 100));
+        assertEquals(List.of(0, 0, 100), destinations.stream().map(HTTPRouteDestination::getWeight).toList());
+    }
+
+    @Test
+    public void shiftWeightFromUnweightedDestination() {
+        List<HTTPRouteDestination> destinations = new ArrayList<>(List.of(destination("v1", null)));
+        EnableIstioAnnotationProcessor.shiftWeight(destinations, destination("v2", 5));
+        assertEquals(List.of(95, 5), destinations.stream().map(HTTPRouteDestination::getWeight).toList());
+        List<HTTPRouteDestination> single = new ArrayList<>(List.of(destination("v2", 50)));
+        EnableIstioAnnotationProcessor.shiftWeight(single, destination("v2", 25));
+        assertNull(single.get(0).getWeight());
+    }
+
+    @Test
+    public void serverSideApplyKeepsSubsetsOfOtherVersion() {
+        FakeIstioApi api = new FakeIstioApi();
+        IstioProperties properties = new IstioProperties();
+        properties.getReconcile().setServerSideApply(true);
+        IstioService istioService = new IstioService("test1", properties);
+        new EnableIstioAnnotationProcessor(api.client, istioService, properties)
+                .process(V1App.class.getAnnotation(EnableIstio.class));
+        EnableIstioAnnotationProcessor v2 = new EnableIstioAnnotationProcessor(api.client, istioService, properties);
+        assertThrows(IllegalStateException.class, () -> v2.process(V2App.class.getAnnotation(EnableIstio.class)));
+        assertEquals(List.of("v1"), api.get(DestinationRule.class).getSpec().getSubsets().stream()
+                .map(Subset::getName).toList());
+        assertEquals(List.of("DestinationRule apply", "VirtualService apply"), api.calls);
+    }
+
+    @Test
+    public void editInsertsRouteBeforeCatchAll() {
+        FakeIstioApi api = new FakeIstioApi();
+        IstioService istioService = new IstioService("test1", null);
+        EnableIstioAnnotationProcessor processor = new EnableIstioAnnotationProcessor(api.client, istioService, null);
+        api.put(processor.buildVirtualService(List.of(V1App.class.getAnnotation(EnableIstio.class))));
+        processor.process(List.of(V1App.class.getAnnotation(EnableIstio.class),
+                V1ApiApp.class.getAnnotation(EnableIstio.class)));
+        List<HTTPRoute> http = api.get(VirtualService.class).getSpec().getHttp();
+        assertEquals(2, http.size());
+        assertEquals(1, http.get(0).getMatch().size());
+        assertTrue(http.get(1).getMatch() == null || http.get(1).getMatch().isEmpty());
+        assertTrue(api.calls.contains("VirtualService update"));
+    }
+
+    @Test
+    public void virtualServiceWrittenAfterDestinationRule() {
+        FakeIstioApi api = new FakeIstioApi();
+        api.delay("DestinationRule create", 300);
+        new EnableIstioAnnotationProcessor(api.client, new IstioService("test1", null), null)
+                .process(V1App.class.getAnnotation(EnableIstio.class));
+        // the reads are sent at once, the VirtualService routes to the subset only once it exists
+        assertTrue(api.calls.indexOf("DestinationRule create") < api.calls.indexOf("VirtualService create"));
+        assertTrue(api.calls.indexOf("VirtualService get") < api.calls.indexOf("DestinationRule create"));
+        assertNotNull(api.get(DestinationRule.class));
+        assertNotNull(api.get(VirtualService.class));
+    }
+
+    @Test
+    public void conflictRetried() {
+        FakeIstioApi api = new FakeIstioApi();
+        IstioProperties properties = new IstioProperties();
+        properties.getReconcile().setConflictBackoff(10);
+        EnableIstioAnnotationProcessor processor =
+                new EnableIstioAnnotationProcessor(api.client, new IstioService("test1", properties), properties);
+        api.put(processor.buildVirtualService(List.of(V1App.class.getAnnotation(EnableIstio.class))));
+        api.conflictOnNext("VirtualService update", 2);
+        processor.process(createEnableIstio(1000, 3, "v1"));
+        assertEquals(2, processor.getLastConflictRetries());
+        assertEquals("1s", api.get(VirtualService.class).getSpec().getHttp().get(0).getTimeout());
+        // the resource is read again before each retry
+        assertEquals(3, api.calls.stream().filter("VirtualService get"::equals).count());
+    }
+
+    @Test
+    public void conflictRetriesExhausted() {
+        FakeIstioApi api = new FakeIstioApi();
+        IstioProperties properties = new IstioProperties();
+        properties.getReconcile().setConflictRetries(1);
+        properties.getReconcile().setConflictBackoff(10);
+        EnableIstioAnnotationProcessor processor =
+                new EnableIstioAnnotationProcessor(api.client, new IstioService("test1", properties), properties);
+        api.put(processor.buildVirtualService(List.of(V1App.class.getAnnotation(EnableIstio.class))));
+        api.conflictOnNext("VirtualService update", 2);
+        KubernetesClientException e = assertThrows(KubernetesClientException.class,
+                () -> processor.process(createEnableIstio(1000, 3, "v1")));
+        assertEquals(409, e.getCode());
+        assertEquals(1, processor.getLastConflictRetries());
+        assertEquals("6s", api.get(VirtualService.class).getSpec().getHttp().get(0).getTimeout());
+    }
+
+    @Test
+    public void processAsyncTimeoutStopsWrites() throws InterruptedException {
+        FakeIstioApi api = new FakeIstioApi();
+        api.delay("DestinationRule get", 500);
+        EnableIstioAnnotationProcessor processor =
+                new EnableIstioAnnotationProcessor(api.client, new IstioService("test1", null), null);
+        CompletableFuture<Void> future = processor.processAsync(List.of(V1App.class.getAnnotation(EnableIstio.class)), 100);
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        // the reads in flight finish, the writes waiting for them never start
+        Thread.sleep(700);
+        assertNull(api.get(DestinationRule.class));
+        assertNull(api.get(VirtualService.class));
+        assertTrue(api.calls.stream().noneMatch(call -> call.endsWith("create") || call.endsWith("update")));
+    }
+
+    @EnableIstio(version = "v1")
+    static class V1App {}
+
+    @EnableIstio(version = "v1", matches = @Match(value = "/api"))
+    static class V1ApiApp {}
+
+    @EnableIstio(version = "v2", weight = 20)
+    static class V2App {}
+
+    private HTTPRouteDestination destination(String subset, Integer weight) {
+        return new HTTPRouteDestinationBuilder()
+                .withNewDestination().withHost("test1").withSubset(subset).endDestination()
+                .withWeight(weight)
+                .build();
+    }
+
     private EnableIstio createEnableIstio(int timeout, int numberOfRetries, String version) {
         return new EnableIstio() {
 
@@ -69,6 +228,21 @@ public class EnableIstioAnnotationProcessorTests {
             public Fault fault() {
                 return null;
             }
+
+            @Override
+            public ConnectionPool connectionPool() {
+                return null;
+            }
+
+            @Override
+            public LoadBalancer loadBalancer() {
+                return null;
+            }
+
+            @Override
+            public OutlierDetection outlierDetection() {
+                return null;
+            }
           
             public boolean enableGateway() {
                 return false;
@@ -0,0 +1,168 @@
+package com.github.piomin.springboot.istio;
+
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import io.fabric8.istio.api.networking.v1beta1.DestinationRule;
+import io.fabric8.istio.api.networking.v1beta1.Gateway;
+import io.fabric8.istio.api.networking.v1beta1.VirtualService;
+import io.fabric8.istio.client.IstioClient;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.dsl.MixedOperation;
+import io.fabric8.kubernetes.client.dsl.Resource;
+import io.fabric8.kubernetes.client.dsl.ServerSideApplicable;
+import io.fabric8.kubernetes.client.utils.Serialization;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * In-memory Istio API with the optimistic concurrency and the server-side apply conflicts of the API server.
+ * The operations are recorded as {@code <kind> <operation>} once they succeed.
+ */
+class FakeIstioApi {
+
+    final IstioClient client = mock(IstioClient.class, RETURNS_DEEP_STUBS);
+    final List<String> calls = new CopyOnWriteArrayList<>();
+    private final Map<Class<?>, HasMetadata> resources = new ConcurrentHashMap<>();
+    private final Map<Class<?>, String> managers = new ConcurrentHashMap<>();
+    private final Map<String, Long> delays = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> conflicts = new ConcurrentHashMap<>();
+    private final AtomicLong resourceVersion = new AtomicLong();
+
+    FakeIstioApi() {
+        doReturn(operation(DestinationRule.class)).when(client.v1beta1()).destinationRules();
+        doReturn(operation(VirtualService.class)).when(client.v1beta1()).virtualServices();
+        doReturn(operation(Gateway.class)).when(client.v1beta1()).gateways();
+    }
+
+    /**
+     * Slows down the operation, e.g. {@code DestinationRule update}
+     */
+    void delay(String call, long millis) {
+        delays.put(call, millis);
+    }
+
+    /**
+     * Fails the next calls of the operation with HTTP 409, as if the resource was modified concurrently
+     */
+    void conflictOnNext(String call, int times) {
+        conflicts.put(call, new AtomicInteger(times));
+    }
+
+    <T extends HasMetadata> T get(Class<T> type) {
+        HasMetadata resource = resources.get(type);
+        return resource != null ? type.cast(Serialization.clone(resource)) : null;
+    }
+
+    void put(HasMetadata resource) {
+        store(Serialization.clone(resource));
+    }
+
+    @SuppressWarnings("rawtypes")
+    private <T extends HasMetadata> MixedOperation operation(Class<T> type) {
+        MixedOperation operation = mock(MixedOperation.class);
+        when(operation.withName(anyString())).thenAnswer(invocation -> resource(type, null));
+        when(operation.resource(any())).thenAnswer(invocation -> resource(type, type.cast(invocation.getArgument(0))));
+        return operation;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends HasMetadata> Resource<T> resource(Class<T> type, T item) {
+        Resource<T> resource = mock(Resource.class);
+        String kind = type.getSimpleName();
+        when(resource.get()).thenAnswer(invocation -> call(kind + " get", () -> get(type)));
+        when(resource.create()).thenAnswer(invocation -> call(kind + " create", () -> create(type, item)));
+        when(resource.update()).thenAnswer(invocation -> call(kind + " update", () -> update(type, item)));
+        when(resource.edit(any(UnaryOperator.class))).thenAnswer(invocation ->
+                call(kind + " patch", () -> edit(type, invocation.getArgument(0))));
+        when(resource.fieldManager(anyString())).thenAnswer(invocation ->
+                applicable(type, item, invocation.getArgument(0)));
+        return resource;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends HasMetadata> ServerSideApplicable<T> applicable(Class<T> type, T item, String manager) {
+        ServerSideApplicable<T> applicable = mock(ServerSideApplicable.class);
+        AtomicInteger force = new AtomicInteger();
+        when(applicable.forceConflicts()).thenAnswer(invocation -> {
+            force.set(1);
+            return applicable;
+        });
+        when(applicable.serverSideApply()).thenAnswer(invocation ->
+                call(type.getSimpleName() + " apply", () -> apply(type, item, manager, force.get() == 1)));
+        return applicable;
+    }
+
+    private <R> R call(String call, Supplier<R> operation) throws InterruptedException {
+        long delay = delays.getOrDefault(call, 0L);
+        if (delay > 0)
+            Thread.sleep(delay);
+        AtomicInteger conflict = conflicts.get(call);
+        if (conflict != null && conflict.getAndDecrement() > 0)
+            throw new KubernetesClientException("Operation cannot be fulfilled: the object has been modified",
+                    HttpURLConnection.HTTP_CONFLICT, null);
+        R result = operation.get();
+        calls.add(call);
+        return result;
+    }
+
+    private synchronized <T extends HasMetadata> T create(Class<T> type, T item) {
+        if (resources.containsKey(type))
+            throw new KubernetesClientException(type.getSimpleName() + " already exists", HttpURLConnection.HTTP_CONFLICT, null);
+        return type.cast(store(Serialization.clone(item)));
+    }
+
+    private synchronized <T extends HasMetadata> T update(Class<T> type, T item) {
+        HasMetadata current = resources.get(type);
+        if (current == null)
+            throw new KubernetesClientException(type.getSimpleName() + " not found", HttpURLConnection.HTTP_NOT_FOUND, null);
+        String expected = item.getMetadata().getResourceVersion();
+        if (expected != null && !expected.equals(current.getMetadata().getResourceVersion()))
+            throw new KubernetesClientException("Operation cannot be fulfilled: the object has been modified",
+                    HttpURLConnection.HTTP_CONFLICT, null);
+        return type.cast(store(Serialization.clone(item)));
+    }
+
+    private synchronized <T extends HasMetadata> T edit(Class<T> type, UnaryOperator<T> function) {
+        T current = get(type);
+        if (current == null)
+            throw new KubernetesClientException(type.getSimpleName() + " not found", HttpURLConnection.HTTP_NOT_FOUND, null);
+        return type.cast(store(Serialization.clone(function.apply(current))));
+    }
+
+    // the lists of Istio resources are atomic, so a different spec of another manager is a conflict
+    private synchronized <T extends HasMetadata> T apply(Class<T> type, T item, String manager, boolean force) {
+        HasMetadata current = resources.get(type);
+        String owner = managers.get(type);
+        if (current != null && owner != null && !owner.equals(manager) && !force
+                && !Objects.equals(spec(current), spec(item)))
+            throw new KubernetesClientException("Apply failed with 1 conflict: conflict with \"" + owner + "\"",
+                    HttpURLConnection.HTTP_CONFLICT, null);
+        managers.put(type, manager);
+        return type.cast(store(Serialization.clone(item)));
+    }
+
+    private HasMetadata store(HasMetadata resource) {
+        resource.getMetadata().setResourceVersion(String.valueOf(resourceVersion.incrementAndGet()));
+        resources.put(resource.getClass(), resource);
+        return Serialization.clone(resource);
+    }
+
+    private static Object spec(HasMetadata resource) {
+        return Serialization.jsonMapper().valueToTree(resource).get("spec");
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.piomin.springboot.istio;
+
+import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.annotation.FaultType;
+import com.github.piomin.springboot.istio.annotation.Match;
+import com.github.piomin.springboot.istio.annotation.MatchMode;
+import com.github.piomin.springboot.istio.annotation.MatchType;
+import com.github.piomin.springboot.istio.config.IstioProperties;
+import com.github.piomin.springboot.istio.processor.ApplicationStartupListener;
+import com.github.piomin.springboot.istio.processor.EnableIstioAnnotationProcessor;
+import com.github.piomin.springboot.istio.processor.IstioConfigRefresher;
+import com.github.piomin.springboot.istio.service.ConnectionPoolConfig;
+import com.github.piomin.springboot.istio.service.IstioConfig;
+import com.github.piomin.springboot.istio.service.IstioService;
+import com.github.piomin.springboot.istio.service.LoadBalancerConfig;
+import com.github.piomin.springboot.istio.service.MatchOptimizer;
+import com.github.piomin.springboot.istio.service.OutlierDetectionConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IstioConfigRefresherTests {
+
+    @Test
+    public void unchanged() {
+        assertTrue(IstioConfigRefresher.changedFields(config(1000, "v1", 100, "/orders"),
+                config(1000, "v1", 100, "/orders")).isEmpty());
+    }
+
+    @Test
+    public void routeFieldsChanged() {
+        assertEquals(List.of("timeout", "weight"), IstioConfigRefresher.changedFields(
+                config(1000, "v1", 100, "/orders"), config(2000, "v1", 50, "/orders")));
+    }
+
+    @Test
+    public void matchesChanged() {
+        assertEquals(List.of("version", "matches"), IstioConfigRefresher.changedFields(
+                config(1000, "v1", 100, "/orders"), config(1000, "v2", 100, "/customers")));
+    }
+
+    @Test
+    public void changeComparedWithAppliedConfiguration() {
+        IstioProperties properties = new IstioProperties();
+        IstioService istioService = new IstioService("test1", properties);
+        EnableIstioAnnotationProcessor processor = mock(EnableIstioAnnotationProcessor.class);
+        ApplicationStartupListener listener = mock(ApplicationStartupListener.class);
+        List<EnableIstio> declarations = List.of(V1App.class.getAnnotation(EnableIstio.class));
+        when(listener.getDeclarations()).thenReturn(declarations);
+        when(listener.getReconciliation()).thenReturn(CompletableFuture.completedFuture(null));
+        try (IstioConfigRefresher refresher = new IstioConfigRefresher(istioService, processor, listener, 0)) {
+            properties.getConnectionPool().setMaxConnections(10);
+            // an override clears the shared cache before the debounced refresh, the next resolve sees the new value
+            istioService.overrideWeight(null);
+            istioService.resolveAll(declarations);
+            refresher.onApplicationEvent(new EnvironmentChangeEvent(this, Set.of("istio.spring.connection-pool.max-connections")));
+            verify(processor, timeout(5000)).reconcile(declarations);
+            verify(processor, never()).patchRoutes(declarations);
+        }
+    }
+
+    @EnableIstio(version = "v1")
+    static class V1App {}
+
+    private IstioConfig config(int timeout, String version, int weight, String uri) {
+        Match match = MatchOptimizer.match(MatchType.URI, MatchMode.PREFIX, uri, "", false);
+        return new IstioConfig(timeout, version, weight, 0, 0, false, "ext",
+                List.of(match), FaultType.ABORT, 0, 500, 0, ConnectionPoolConfig.DEFAULT,
+                LoadBalancerConfig.DEFAULT, OutlierDetectionConfig.DEFAULT, 0);
+    }
+}
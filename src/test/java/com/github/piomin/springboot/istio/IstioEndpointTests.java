@@ -0,0 +1,81 @@
+package com.github.piomin.springboot.istio;
+
+import com.github.piomin.springboot.istio.actuate.IstioEndpoint;
+import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.processor.ApplicationStartupListener;
+import com.github.piomin.springboot.istio.processor.EnableIstioAnnotationProcessor;
+import com.github.piomin.springboot.istio.service.IstioService;
+import io.fabric8.istio.api.networking.v1beta1.VirtualService;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IstioEndpointTests {
+
+    private final FakeIstioApi api = new FakeIstioApi();
+    private final IstioService istioService = new IstioService("test1", null);
+    private final EnableIstioAnnotationProcessor processor =
+            new EnableIstioAnnotationProcessor(api.client, istioService, null);
+    private final ApplicationStartupListener listener = mock(ApplicationStartupListener.class);
+    private final IstioEndpoint endpoint = new IstioEndpoint(istioService, processor, listener);
+
+    @Test
+    public void disabledWithoutDeclarations() {
+        when(listener.getDeclarations()).thenReturn(List.of());
+        Map<String, Object> result = endpoint.istio();
+        assertEquals(false, result.get("enabled"));
+        assertEquals("test1", result.get("applicationName"));
+    }
+
+    @Test
+    public void noDriftAfterReconciliation() {
+        List<EnableIstio> declarations = List.of(V1App.class.getAnnotation(EnableIstio.class));
+        when(listener.getDeclarations()).thenReturn(declarations);
+        processor.process(declarations);
+        Map<String, Object> result = endpoint.istio();
+        assertEquals(true, result.get("enabled"));
+        assertNotNull(result.get("lastReconcile"));
+        assertEquals(Map.of("DestinationRule", List.of(), "VirtualService", List.of()), result.get("drift"));
+        List<?> configuration = (List<?>) result.get("configuration");
+        assertEquals(6000, ((Map<?, ?>) ((Map<?, ?>) configuration.get(0)).get("timeout")).get("value"));
+    }
+
+    @Test
+    public void driftOfModifiedVirtualService() {
+        List<EnableIstio> declarations = List.of(V1App.class.getAnnotation(EnableIstio.class));
+        when(listener.getDeclarations()).thenReturn(declarations);
+        processor.process(declarations);
+        VirtualService vs = api.get(VirtualService.class);
+        vs.getSpec().getHttp().get(0).setTimeout("1s");
+        api.put(vs);
+        Map<?, ?> drift = (Map<?, ?>) endpoint.istio().get("drift");
+        assertEquals(List.of(), drift.get("DestinationRule"));
+        assertFalse(((List<?>) drift.get("VirtualService")).isEmpty());
+    }
+
+    @Test
+    public void driftOfMissingResources() {
+        when(listener.getDeclarations()).thenReturn(List.of(V1App.class.getAnnotation(EnableIstio.class)));
+        Map<String, Object> result = endpoint.istio();
+        assertEquals(Map.of("DestinationRule", List.of("resource does not exist"),
+                "VirtualService", List.of("resource does not exist")), result.get("drift"));
+        assertNull(result.get("lastReconcile"));
+    }
+
+    @Test
+    public void errorOfApiServer() {
+        when(listener.getDeclarations()).thenReturn(List.of(V1App.class.getAnnotation(EnableIstio.class)));
+        api.conflictOnNext("DestinationRule get", 1);
+        Map<String, Object> result = endpoint.istio();
+        assertNotNull(result.get("error"));
+        assertNull(result.get("drift"));
+    }
+
+    @EnableIstio(version = "v1")
+    static class V1App {}
+}
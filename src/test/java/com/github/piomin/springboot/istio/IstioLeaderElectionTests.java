@@ -0,0 +1,99 @@
+package com.github.piomin.springboot.istio;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.piomin.springboot.istio.config.IstioProperties;
+import com.github.piomin.springboot.istio.processor.IstioLeaderElection;
+import com.github.piomin.springboot.istio.service.IstioService;
+import io.fabric8.istio.client.IstioClient;
+import io.fabric8.kubernetes.api.model.coordination.v1.Lease;
+import io.fabric8.kubernetes.api.model.coordination.v1.LeaseBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.extended.leaderelection.LeaderElectionConfig;
+import io.fabric8.kubernetes.client.extended.leaderelection.LeaderElector;
+import io.fabric8.kubernetes.client.extended.leaderelection.LeaderElectorBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IstioLeaderElectionTests {
+
+    private final KubernetesClient client = mock(KubernetesClient.class, RETURNS_DEEP_STUBS);
+    private final LeaderElector elector = mock(LeaderElector.class);
+    private final AtomicReference<LeaderElectionConfig> config = new AtomicReference<>();
+    private final AtomicInteger reconciled = new AtomicInteger();
+    private IstioLeaderElection leaderElection;
+
+    @BeforeEach
+    public void setup() {
+        IstioClient istioClient = mock(IstioClient.class);
+        when(istioClient.adapt(KubernetesClient.class)).thenReturn(client);
+        when(client.getNamespace()).thenReturn("test");
+        LeaderElectorBuilder builder = mock(LeaderElectorBuilder.class);
+        when(client.leaderElector()).thenReturn(builder);
+        when(builder.withConfig(any())).thenAnswer(invocation -> {
+            config.set(invocation.getArgument(0));
+            return builder;
+        });
+        when(builder.build()).thenReturn(elector);
+        IstioProperties properties = new IstioProperties();
+        properties.getLeaderElection().setRetryPeriod(50);
+        properties.getReconcile().setTimeout(500);
+        leaderElection = new IstioLeaderElection(istioClient, new IstioService("test1", properties), properties);
+    }
+
+    @Test
+    public void holderReconcilesDespiteReconciledHash() {
+        when(client.leases().inNamespace("test").withName(anyString()).get()).thenReturn(lease("", "abc"));
+        when(elector.start()).thenAnswer(invocation ->
+                CompletableFuture.runAsync(() -> config.get().getLeaderCallbacks().onStartLeading()));
+        leaderElection.run("v1", "abc", reconciled::incrementAndGet);
+        assertEquals(1, reconciled.get());
+        assertEquals("test1-v1-istio", config.get().getName());
+    }
+
+    @Test
+    public void followerWaitsForHashOfHolder() {
+        when(client.leases().inNamespace("test").withName(anyString()).get())
+                .thenReturn(lease("other", "old"), lease("other", "old"), lease("", "abc"));
+        when(elector.start()).thenAnswer(invocation -> new CompletableFuture<>());
+        leaderElection.run("v1", "abc", reconciled::incrementAndGet);
+        assertEquals(0, reconciled.get());
+    }
+
+    @Test
+    public void followerIgnoresHashWithoutHolder() {
+        when(client.leases().inNamespace("test").withName(anyString()).get()).thenReturn(lease("", "abc"));
+        when(elector.start()).thenAnswer(invocation -> new CompletableFuture<>());
+        assertThrows(IllegalStateException.class, () -> leaderElection.run("v1", "abc", reconciled::incrementAndGet));
+        assertEquals(0, reconciled.get());
+    }
+
+    @Test
+    public void holderFailureIsRethrown() {
+        when(client.leases().inNamespace("test").withName(anyString()).get()).thenReturn(null);
+        when(elector.start()).thenAnswer(invocation ->
+                CompletableFuture.runAsync(() -> config.get().getLeaderCallbacks().onStartLeading()));
+        assertThrows(IllegalArgumentException.class, () -> leaderElection.run("v1", "abc", () -> {
+            throw new IllegalArgumentException("Invalid Istio configuration");
+        }));
+    }
+
+    private Lease lease(String holder, String hash) {
+        return new LeaseBuilder()
+                .withNewMetadata()
+                .withName("test1-v1-istio")
+                .addToAnnotations(IstioLeaderElection.RECONCILED_ANNOTATION, hash)
+                .endMetadata()
+                .withNewSpec().withHolderIdentity(holder).endSpec()
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.piomin.springboot.istio;
+
+import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import io.fabric8.istio.api.api.networking.v1alpha3.Subset;
+import io.fabric8.istio.api.networking.v1beta1.DestinationRule;
+import io.fabric8.istio.api.networking.v1beta1.VirtualService;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.generate.ClassNameGenerator;
+import org.springframework.aot.generate.DefaultGenerationContext;
+import org.springframework.aot.generate.GeneratedFiles;
+import org.springframework.aot.generate.InMemoryGeneratedFiles;
+import org.springframework.beans.factory.aot.AotServices;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotContribution;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotProcessor;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationCode;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.javapoet.ClassName;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class IstioManifestsAotProcessorTests {
+
+    private final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+    private final InMemoryGeneratedFiles generatedFiles = new InMemoryGeneratedFiles();
+
+    public IstioManifestsAotProcessorTests() {
+        beanFactory.registerSingleton("environment", new MockEnvironment()
+                .withProperty("spring.application.name", "test1")
+                .withProperty("istio.spring.timeout", "2000"));
+    }
+
+    @Test
+    public void noContributionWithoutAnnotations() {
+        beanFactory.registerBeanDefinition("plain", new RootBeanDefinition(Object.class));
+        assertNull(processor().processAheadOfTime(beanFactory));
+    }
+
+    @Test
+    public void manifestsGenerated() throws IOException {
+        // registered out of order, the annotations are processed sorted by bean name like at runtime
+        beanFactory.registerBeanDefinition("b", new RootBeanDefinition(V2App.class));
+        beanFactory.registerBeanDefinition("a", new RootBeanDefinition(V1App.class));
+        generate();
+        DestinationRule dr = Serialization.unmarshal(content("META-INF/istio/destinationrule.yaml"), DestinationRule.class);
+        assertEquals("test1-destination", dr.getMetadata().getName());
+        assertEquals(List.of("v1"), dr.getSpec().getSubsets().stream().map(Subset::getName).toList());
+        VirtualService vs = Serialization.unmarshal(content("META-INF/istio/virtualservice.yaml"), VirtualService.class);
+        assertEquals("test1-route", vs.getMetadata().getName());
+        // istio.spring.* properties are bound like in the application context
+        assertEquals("2s", vs.getSpec().getHttp().get(0).getTimeout());
+        assertNull(generatedFiles.getGeneratedFile(GeneratedFiles.Kind.RESOURCE, "META-INF/istio/gateway.yaml"));
+    }
+
+    private BeanFactoryInitializationAotProcessor processor() {
+        // the processor is package-private, so it is loaded like Spring AOT does, from aot.factories
+        return AotServices.factories(getClass().getClassLoader()).load(BeanFactoryInitializationAotProcessor.class)
+                .stream()
+                .filter(processor -> processor.getClass().getSimpleName().equals("IstioManifestsAotProcessor"))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private void generate() {
+        BeanFactoryInitializationAotContribution contribution = processor().processAheadOfTime(beanFactory);
+        assertNotNull(contribution);
+        contribution.applyTo(new DefaultGenerationContext(new ClassNameGenerator(ClassName.get("com.example", "App")),
+                generatedFiles), mock(BeanFactoryInitializationCode.class));
+    }
+
+    private String content(String path) throws IOException {
+        String content = generatedFiles.getGeneratedFileContent(GeneratedFiles.Kind.RESOURCE, path);
+        assertNotNull(content, path + " not generated");
+        return content;
+    }
+
+    @EnableIstio(version = "v1")
+    static class V1App {}
+
+    @EnableIstio(version = "v2", weight = 20)
+    static class V2App {}
+}
@@ -1,8 +1,11 @@
 package com.github.piomin.springboot.istio;
 
+import com.github.piomin.springboot.istio.annotation.ConnectionPool;
 import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.annotation.LoadBalancer;
 import com.github.piomin.springboot.istio.annotation.Fault;
 import com.github.piomin.springboot.istio.annotation.Match;
+import com.github.piomin.springboot.istio.annotation.OutlierDetection;
 import com.github.piomin.springboot.istio.config.IstioProperties;
 import com.github.piomin.springboot.istio.service.IstioService;
 import io.fabric8.istio.api.api.networking.v1alpha3.Destination;
@@ -108,6 +111,9 @@ public class IstioPropertiesTests {
             @Override public int circuitBreakerErrors() { return 0; }
             @Override public Match[] matches() { return new Match[0]; }
             @Override public Fault fault() { return null; }
+            @Override public ConnectionPool connectionPool() { return null; }
+            @Override public LoadBalancer loadBalancer() { return null; }
+            @Override public OutlierDetection outlierDetection() { return null; }
             @Override public boolean enableGateway() { return false; }
             @Override public String domain() { return "ext"; }
         };
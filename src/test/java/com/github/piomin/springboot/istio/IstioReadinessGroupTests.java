@@ -0,0 +1,59 @@
+package com.github.piomin.springboot.istio;
+
+import com.github.piomin.springboot.istio.actuate.IstioReadinessEnvironmentPostProcessor;
+import com.github.piomin.springboot.istio.config.SpringBootIstioAutoConfiguration;
+import io.fabric8.istio.client.IstioClient;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.availability.ApplicationAvailabilityAutoConfiguration;
+import org.springframework.boot.health.actuate.endpoint.CompositeHealthDescriptor;
+import org.springframework.boot.health.actuate.endpoint.HealthEndpoint;
+import org.springframework.boot.health.autoconfigure.actuate.endpoint.AvailabilityProbesAutoConfiguration;
+import org.springframework.boot.health.autoconfigure.actuate.endpoint.HealthEndpointAutoConfiguration;
+import org.springframework.boot.health.autoconfigure.application.AvailabilityHealthContributorAutoConfiguration;
+import org.springframework.boot.health.autoconfigure.contributor.HealthContributorAutoConfiguration;
+import org.springframework.boot.health.autoconfigure.registry.HealthContributorRegistryAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IstioReadinessGroupTests {
+
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+            .withInitializer(context -> new IstioReadinessEnvironmentPostProcessor()
+                    .postProcessEnvironment(context.getEnvironment(), new SpringApplication()))
+            .withConfiguration(AutoConfigurations.of(ApplicationAvailabilityAutoConfiguration.class,
+                    HealthContributorRegistryAutoConfiguration.class, HealthContributorAutoConfiguration.class,
+                    AvailabilityHealthContributorAutoConfiguration.class, AvailabilityProbesAutoConfiguration.class,
+                    HealthEndpointAutoConfiguration.class, SpringBootIstioAutoConfiguration.class))
+            .withBean(IstioClient.class, () -> new FakeIstioApi().client)
+            .withPropertyValues("spring.application.name=test1", "management.endpoint.health.show-components=always");
+
+    @Test
+    public void istioAddedToReadinessGroup() {
+        runner.run(context -> assertEquals(Set.of("readinessState", "istio"), readiness(context.getBean(HealthEndpoint.class))));
+    }
+
+    @Test
+    public void readinessGroupOfApplicationKept() {
+        runner.withPropertyValues("management.endpoint.health.group.readiness.include=readinessState")
+                .run(context -> assertEquals(Set.of("readinessState"), readiness(context.getBean(HealthEndpoint.class))));
+    }
+
+    @Test
+    public void readinessGroupNotAddedWithoutProbes() {
+        runner.withPropertyValues("management.endpoint.health.probes.enabled=false").run(context -> {
+            assertNull(context.getEnvironment().getProperty("management.endpoint.health.group.readiness.include"));
+            assertNull(context.getBean(HealthEndpoint.class).healthForPath("readiness"));
+        });
+    }
+
+    private Set<String> readiness(HealthEndpoint endpoint) {
+        CompositeHealthDescriptor readiness = (CompositeHealthDescriptor) endpoint.healthForPath("readiness");
+        assertNotNull(readiness);
+        return readiness.getComponents().keySet();
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.piomin.springboot.istio;
+
+import com.github.piomin.springboot.istio.actuate.IstioReconcileHealthIndicator;
+import com.github.piomin.springboot.istio.processor.ApplicationStartupListener;
+import com.github.piomin.springboot.istio.processor.EnableIstioAnnotationProcessor;
+import com.github.piomin.springboot.istio.service.IstioService;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.Status;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IstioReconcileHealthIndicatorTests {
+
+    private final EnableIstioAnnotationProcessor processor =
+            new EnableIstioAnnotationProcessor(null, new IstioService());
+    private final ApplicationStartupListener listener = new ApplicationStartupListener(null, processor);
+
+    @Test
+    public void outOfServiceWhilePending() {
+        IstioReconcileHealthIndicator indicator = new IstioReconcileHealthIndicator(listener, processor, 0);
+        Health health = indicator.health();
+        assertEquals(Status.OUT_OF_SERVICE, health.getStatus());
+        assertEquals("pending", health.getDetails().get("reconciliation"));
+    }
+
+    @Test
+    public void upAfterReconciliation() {
+        IstioReconcileHealthIndicator indicator = new IstioReconcileHealthIndicator(listener, processor, 0);
+        listener.getReconciliation().complete(null);
+        assertEquals(Status.UP, indicator.health().getStatus());
+    }
+
+    @Test
+    public void outOfServiceAfterFailure() {
+        IstioReconcileHealthIndicator indicator = new IstioReconcileHealthIndicator(listener, processor, 0);
+        listener.getReconciliation().completeExceptionally(new IllegalStateException("forbidden"));
+        Health health = indicator.health();
+        assertEquals(Status.OUT_OF_SERVICE, health.getStatus());
+        assertEquals("forbidden", health.getDetails().get("error"));
+    }
+
+    @Test
+    public void failOpenAfterTimeout() throws InterruptedException {
+        IstioReconcileHealthIndicator indicator = new IstioReconcileHealthIndicator(listener, processor, 50);
+        assertEquals(Status.OUT_OF_SERVICE, indicator.health().getStatus());
+        Thread.sleep(100);
+        Health health = indicator.health();
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(true, health.getDetails().get("failOpen"));
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.github.piomin.springboot.istio;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import com.github.piomin.springboot.istio.processor.IstioResourceCache;
+import com.github.piomin.springboot.istio.processor.SpecHash;
+import com.github.piomin.springboot.istio.service.IstioService;
+import io.fabric8.istio.api.networking.v1beta1.VirtualService;
+import io.fabric8.istio.api.networking.v1beta1.VirtualServiceBuilder;
+import io.fabric8.istio.client.IstioClient;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IstioResourceCacheTests {
+
+    private final IstioClient istioClient = mock(IstioClient.class, RETURNS_DEEP_STUBS);
+    private final Map<String, ResourceEventHandler<HasMetadata>> handlers = new ConcurrentHashMap<>();
+    private final AtomicInteger reconciled = new AtomicInteger();
+    private final VirtualService vs = new VirtualServiceBuilder()
+            .withNewMetadata().withName("test1-route").endMetadata()
+            .withNewSpec().addToHosts("test1").endSpec()
+            .build();
+    private IstioResourceCache cache;
+
+    @BeforeEach
+    public void setup() {
+        vs.getMetadata().setAnnotations(Map.of(SpecHash.ANNOTATION, SpecHash.of(vs.getSpec())));
+        when(istioClient.v1beta1().destinationRules().withName(anyString()).inform(any(ResourceEventHandler.class)))
+                .thenAnswer(invocation -> informer("DestinationRule", invocation.getArgument(0), List.of()));
+        when(istioClient.v1beta1().virtualServices().withName(anyString()).inform(any(ResourceEventHandler.class)))
+                .thenAnswer(invocation -> informer("VirtualService", invocation.getArgument(0), List.of(vs)));
+        cache = new IstioResourceCache(istioClient, new IstioService("test1", null), 50);
+    }
+
+    @AfterEach
+    public void close() {
+        cache.close();
+    }
+
+    @Test
+    public void readsFromInformers() {
+        cache.start(false, reconciled::incrementAndGet);
+        await(cache::isStarted);
+        assertNull(cache.getDestinationRule());
+        assertNull(cache.getGateway());
+        assertEquals(vs, cache.getVirtualService());
+        assertNotSame(vs, cache.getVirtualService());
+    }
+
+    @Test
+    public void ownWritesIgnored() throws InterruptedException {
+        cache.start(false, reconciled::incrementAndGet);
+        await(cache::isStarted);
+        handlers.get("VirtualService").onUpdate(vs, new VirtualServiceBuilder(vs).build());
+        Thread.sleep(200);
+        assertEquals(0, reconciled.get());
+        VirtualService modified = new VirtualServiceBuilder(vs).editSpec().addToHosts("test2").endSpec().build();
+        handlers.get("VirtualService").onUpdate(vs, modified);
+        await(() -> reconciled.get() == 1);
+    }
+
+    @Test
+    public void failedReconciliationRetried() {
+        cache.start(false, () -> {
+            if (reconciled.incrementAndGet() == 1)
+                throw new IllegalStateException("Timeout waiting for the reconciliation of lease: test1-v1-istio");
+        });
+        await(cache::isStarted);
+        handlers.get("VirtualService").onDelete(vs, false);
+        await(() -> reconciled.get() == 2);
+    }
+
+    @SuppressWarnings("unchecked")
+    private SharedIndexInformer<HasMetadata> informer(String kind, ResourceEventHandler<HasMetadata> handler,
+                                                      List<HasMetadata> items) {
+        handlers.put(kind, handler);
+        SharedIndexInformer<HasMetadata> informer = mock(SharedIndexInformer.class, RETURNS_DEEP_STUBS);
+        when(informer.getIndexer().list()).thenReturn(items);
+        return informer;
+    }
+
+    private void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met within 5 seconds");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.piomin.springboot.istio;
+
+import com.github.piomin.springboot.istio.aot.IstioRuntimeHints;
+import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.index.EnableIstioIndex;
+import io.fabric8.istio.api.api.networking.v1alpha3.HTTPRoute;
+import io.fabric8.istio.api.api.networking.v1alpha3.Subset;
+import io.fabric8.istio.api.networking.v1beta1.VirtualService;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IstioRuntimeHintsTests {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    public IstioRuntimeHintsTests() {
+        new IstioRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    public void resourcesAndNestedModelRegistered() {
+        assertTrue(RuntimeHintsPredicates.reflection().onType(VirtualService.class).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(HTTPRoute.class).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(Subset.class).test(hints));
+    }
+
+    @Test
+    public void indexRegistered() {
+        assertTrue(RuntimeHintsPredicates.resource().forResource(EnableIstioIndex.LOCATION).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(EnableIstio.class).test(hints));
+    }
+
+    @Test
+    public void annotatedTestClassesIndexed() {
+        assertTrue(EnableIstioIndex.load(getClass().getClassLoader()).orElseThrow()
+                .contains(SampleAppWithIstio.class.getName()));
+    }
+}
@@ -1,9 +1,16 @@
 package com.github.piomin.springboot.istio;
 
+import com.github.piomin.springboot.istio.annotation.ConnectionPool;
 import com.github.piomin.springboot.istio.annotation.EnableIstio;
+import com.github.piomin.springboot.istio.annotation.HashKey;
+import com.github.piomin.springboot.istio.annotation.LoadBalancer;
+import com.github.piomin.springboot.istio.annotation.LoadBalancerPolicy;
+import com.github.piomin.springboot.istio.annotation.H2UpgradePolicy;
 import com.github.piomin.springboot.istio.annotation.Match;
+import com.github.piomin.springboot.istio.annotation.OutlierDetection;
 import com.github.piomin.springboot.istio.annotation.MatchMode;
 import com.github.piomin.springboot.istio.annotation.MatchType;
+import com.github.piomin.springboot.istio.service.IstioConfig;
 import com.github.piomin.springboot.istio.service.IstioService;
 import com.github.piomin.springboot.istio.annotation.Fault;
 import com.github.piomin.springboot.istio.annotation.FaultType;
@@ -15,6 +22,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.lang.annotation.Annotation;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -88,6 +96,196 @@ public class IstioServiceTests {
         assertEquals(HTTPFaultInjectionDelayFixedDelay.class, faultInjection.getDelay().getHttpDelayType().getClass());
     }
 
+    @Test
+    public void resolveCached() {
+        EnableIstio enableIstio = createEnableIstio(10000, 3, "v1", null, null);
+        IstioConfig config = istioService.resolve(enableIstio);
+        assertSame(config, istioService.resolve(enableIstio));
+        assertEquals(10000, config.timeout());
+        assertTrue(config.matches().isEmpty());
+        istioService.refresh();
+        IstioConfig refreshed = istioService.resolve(enableIstio);
+        assertNotSame(config, refreshed);
+        assertEquals(config, refreshed);
+    }
+
+    @Test
+    public void resolveWeightOverride() {
+        EnableIstio enableIstio = createEnableIstio(10000, 3, "v1", null, null);
+        try {
+            istioService.overrideWeight(25);
+            assertEquals(25, istioService.getWeight(enableIstio));
+            assertEquals(25, istioService.buildRouteDestination(enableIstio).getWeight());
+            assertEquals("canary", istioService.getConfigurationSources().get("weight"));
+        } finally {
+            istioService.overrideWeight(null);
+        }
+        assertEquals(0, istioService.getWeight(enableIstio));
+        assertEquals("annotation", istioService.getConfigurationSources().get("weight"));
+    }
+
+    @Test
+    public void resolveInvalidWeight() {
+        EnableIstio enableIstio = InvalidWeightApp.class.getAnnotation(EnableIstio.class);
+        assertThrows(IllegalArgumentException.class, () -> istioService.resolve(enableIstio));
+    }
+
+    @EnableIstio(weight = 120)
+    static class InvalidWeightApp { }
+
+    @Test
+    public void buildConnectionPool() {
+        EnableIstio enableIstio = ConnectionPoolApp.class.getAnnotation(EnableIstio.class);
+        ConnectionPoolSettings pool = istioService.buildConnectionPool(enableIstio);
+        assertEquals(100, pool.getTcp().getMaxConnections());
+        assertEquals("250ms", pool.getTcp().getConnectTimeout());
+        assertEquals("120s", pool.getTcp().getTcpKeepalive().getTime());
+        assertEquals(50, pool.getHttp().getHttp1MaxPendingRequests());
+        assertEquals("30s", pool.getHttp().getIdleTimeout());
+        assertNull(pool.getHttp().getHttp2MaxRequests());
+        assertEquals("UPGRADE", pool.getHttp().getH2UpgradePolicy().toString());
+    }
+
+    @Test
+    public void buildDefaultConnectionPool() {
+        EnableIstio enableIstio = CatchAllRouteApp.class.getAnnotation(EnableIstio.class);
+        ConnectionPoolSettings pool = istioService.buildConnectionPool(enableIstio);
+        assertNull(pool.getTcp());
+        assertNotNull(pool.getHttp());
+    }
+
+    @Test
+    public void resolveInvalidConnectionPool() {
+        EnableIstio enableIstio = InvalidConnectionPoolApp.class.getAnnotation(EnableIstio.class);
+        assertThrows(IllegalArgumentException.class, () -> istioService.resolve(enableIstio));
+    }
+
+    @EnableIstio(connectionPool = @ConnectionPool(maxConnections = 100, connectTimeout = 250, tcpKeepaliveTime = 120000,
+            http1MaxPendingRequests = 50, idleTimeout = 30000, h2UpgradePolicy = H2UpgradePolicy.UPGRADE))
+    static class ConnectionPoolApp { }
+
+    @EnableIstio(connectionPool = @ConnectionPool(maxRetries = -1))
+    static class InvalidConnectionPoolApp { }
+
+    @Test
+    public void buildLoadBalancer() {
+        assertNull(istioService.buildLoadBalancer(CatchAllRouteApp.class.getAnnotation(EnableIstio.class)));
+        LoadBalancerSettings leastRequest = istioService.buildLoadBalancer(LeastRequestApp.class.getAnnotation(EnableIstio.class));
+        assertEquals(LoadBalancerSettingsSimpleLB.LEAST_REQUEST,
+                ((LoadBalancerSettingsSimpleLbPolicy) leastRequest.getLbPolicy()).getSimple());
+        LoadBalancerSettings settings = istioService.buildLoadBalancer(ConsistentHashApp.class.getAnnotation(EnableIstio.class));
+        LoadBalancerSettingsConsistentHashLB hash = ((LoadBalancerSettingsConsistentHashLbPolicy) settings.getLbPolicy())
+                .getConsistentHash();
+        LoadBalancerSettingsConsistentHashLBHTTPCookie cookie =
+                ((LoadBalancerSettingsConsistentHashLBHttpCookieKey) hash.getHashKey()).getHttpCookie();
+        assertEquals("session", cookie.getName());
+        assertEquals("10s", cookie.getTtl());
+        assertInstanceOf(LoadBalancerSettingsConsistentHashLBRingHashAlgorithm.class, hash.getHashAlgorithm());
+        LoadBalancerSettings maglev = istioService.buildLoadBalancer(MaglevApp.class.getAnnotation(EnableIstio.class));
+        hash = ((LoadBalancerSettingsConsistentHashLbPolicy) maglev.getLbPolicy()).getConsistentHash();
+        assertEquals(Boolean.TRUE, ((LoadBalancerSettingsConsistentHashLBUseSourceIpKey) hash.getHashKey()).getUseSourceIp());
+        assertEquals(65537L, ((LoadBalancerSettingsConsistentHashLBMaglevAlgorithm) hash.getHashAlgorithm())
+                .getMaglev().getTableSize());
+    }
+
+    @Test
+    public void resolveInvalidLoadBalancer() {
+        assertThrows(IllegalArgumentException.class,
+                () -> istioService.resolve(HashWithoutKeyApp.class.getAnnotation(EnableIstio.class)));
+        assertThrows(IllegalArgumentException.class,
+                () -> istioService.resolve(HeaderWithoutNameApp.class.getAnnotation(EnableIstio.class)));
+        assertThrows(IllegalArgumentException.class,
+                () -> istioService.resolve(MaglevNotPrimeApp.class.getAnnotation(EnableIstio.class)));
+    }
+
+    @Test
+    public void buildOutlierDetection() {
+        assertNull(istioService.buildCircuitBreaker(CatchAllRouteApp.class.getAnnotation(EnableIstio.class))
+                .getOutlierDetection());
+        TrafficPolicy defaults = istioService.buildCircuitBreaker(CircuitBreakerApp.class.getAnnotation(EnableIstio.class));
+        assertEquals(5, defaults.getOutlierDetection().getConsecutive5xxErrors());
+        assertEquals("30s", defaults.getOutlierDetection().getBaseEjectionTime());
+        assertEquals(50, defaults.getOutlierDetection().getMaxEjectionPercent());
+        assertEquals(50, defaults.getOutlierDetection().getMinHealthPercent());
+        TrafficPolicy gateway = istioService.buildCircuitBreaker(GatewayErrorsApp.class.getAnnotation(EnableIstio.class));
+        assertEquals(0, gateway.getOutlierDetection().getConsecutive5xxErrors());
+        assertEquals(3, gateway.getOutlierDetection().getConsecutiveGatewayErrors());
+        assertEquals("500ms", gateway.getOutlierDetection().getInterval());
+    }
+
+    @Test
+    public void resolveInvalidOutlierDetection() {
+        assertThrows(IllegalArgumentException.class,
+                () -> istioService.resolve(LocalOriginWithoutSplitApp.class.getAnnotation(EnableIstio.class)));
+    }
+
+    @EnableIstio(circuitBreakerErrors = 5)
+    static class CircuitBreakerApp { }
+
+    @EnableIstio(outlierDetection = @OutlierDetection(consecutiveGatewayErrors = 3, interval = 500))
+    static class GatewayErrorsApp { }
+
+    @EnableIstio(outlierDetection = @OutlierDetection(consecutiveLocalOriginFailures = 3))
+    static class LocalOriginWithoutSplitApp { }
+
+    @EnableIstio(loadBalancer = @LoadBalancer(policy = LoadBalancerPolicy.LEAST_REQUEST))
+    static class LeastRequestApp { }
+
+    @EnableIstio(loadBalancer = @LoadBalancer(policy = LoadBalancerPolicy.RING_HASH, hashKey = HashKey.COOKIE,
+            hashKeyName = "session", cookieTtl = 10000))
+    static class ConsistentHashApp { }
+
+    @EnableIstio(loadBalancer = @LoadBalancer(policy = LoadBalancerPolicy.MAGLEV, hashKey = HashKey.SOURCE_IP,
+            ringSize = 65537))
+    static class MaglevApp { }
+
+    @EnableIstio(loadBalancer = @LoadBalancer(policy = LoadBalancerPolicy.MAGLEV))
+    static class HashWithoutKeyApp { }
+
+    @EnableIstio(loadBalancer = @LoadBalancer(policy = LoadBalancerPolicy.RING_HASH, hashKey = HashKey.HEADER))
+    static class HeaderWithoutNameApp { }
+
+    @EnableIstio(loadBalancer = @LoadBalancer(policy = LoadBalancerPolicy.MAGLEV, hashKey = HashKey.SOURCE_IP,
+            ringSize = 65536))
+    static class MaglevNotPrimeApp { }
+
+    @Test
+    public void resolveAllCatchAllLast() {
+        List<IstioConfig> configs = istioService.resolveAll(List.of(
+                CatchAllRouteApp.class.getAnnotation(EnableIstio.class),
+                OrdersRouteApp.class.getAnnotation(EnableIstio.class)));
+        assertEquals(2, configs.size());
+        assertEquals("/orders", configs.get(0).matches().get(0).value());
+        assertTrue(configs.get(1).matches().isEmpty());
+    }
+
+    @Test
+    public void resolveAllConflictingVersion() {
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> istioService.resolveAll(List.of(
+                OrdersRouteApp.class.getAnnotation(EnableIstio.class),
+                OtherVersionApp.class.getAnnotation(EnableIstio.class))));
+        assertTrue(e.getMessage().contains("version"));
+    }
+
+    @Test
+    public void resolveAllDuplicateMatches() {
+        assertThrows(IllegalStateException.class, () -> istioService.resolveAll(List.of(
+                OrdersRouteApp.class.getAnnotation(EnableIstio.class),
+                OrdersTimeoutApp.class.getAnnotation(EnableIstio.class))));
+    }
+
+    @EnableIstio(version = "v1", timeout = 1000)
+    static class CatchAllRouteApp { }
+
+    @EnableIstio(version = "v1", matches = @Match("/orders"))
+    static class OrdersRouteApp { }
+
+    @EnableIstio(version = "v1", timeout = 2000, matches = @Match("/orders"))
+    static class OrdersTimeoutApp { }
+
+    @EnableIstio(version = "v2", matches = @Match("/customers"))
+    static class OtherVersionApp { }
+
     private EnableIstio createEnableIstio(int timeout, int numberOfRetries, String version, Fault fault, Match match) {
         return new EnableIstio() {
 
@@ -130,6 +328,21 @@ public class IstioServiceTests {
             public Fault fault() {
                 return fault;
             }
+
+            @Override
+            public ConnectionPool connectionPool() {
+                return null;
+            }
+
+            @Override
+            public LoadBalancer loadBalancer() {
+                return null;
+            }
+
+            @Override
+            public OutlierDetection outlierDetection() {
+                return null;
+            }
           
             @Override
             public boolean enableGateway() {
@@ -0,0 +1,102 @@
+package com.github.piomin.springboot.istio;
+
+import com.github.piomin.springboot.istio.annotation.Match;
+import com.github.piomin.springboot.istio.annotation.MatchMode;
+import com.github.piomin.springboot.istio.annotation.MatchType;
+import com.github.piomin.springboot.istio.service.MatchOptimizer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(OutputCaptureExtension.class)
+public class MatchOptimizerTests {
+
+    @Test
+    public void regexRewrittenAsPrefix() {
+        List<Match> matches = MatchOptimizer.optimize(List.of(uri(MatchMode.REGEX, "^/api/v1/.*")));
+        assertEquals(1, matches.size());
+        assertEquals(MatchMode.PREFIX, matches.get(0).mode());
+        assertEquals("/api/v1/", matches.get(0).value());
+    }
+
+    @Test
+    public void regexRewrittenAsExact() {
+        List<Match> matches = MatchOptimizer.optimize(List.of(uri(MatchMode.REGEX, "^/health\\.json$")));
+        assertEquals(MatchMode.EXACT, matches.get(0).mode());
+        assertEquals("/health.json", matches.get(0).value());
+    }
+
+    @Test
+    public void realRegexKept() {
+        List<Match> matches = MatchOptimizer.optimize(List.of(uri(MatchMode.REGEX, "/api/v[0-9]+/.*")));
+        assertEquals(MatchMode.REGEX, matches.get(0).mode());
+        assertEquals("/api/v[0-9]+/.*", matches.get(0).value());
+    }
+
+    @Test
+    public void caseInsensitiveRegexKept() {
+        Match match = MatchOptimizer.match(MatchType.URI, MatchMode.REGEX, "/api/.*", "", true);
+        assertEquals(MatchMode.REGEX, MatchOptimizer.optimize(List.of(match)).get(0).mode());
+    }
+
+    @Test
+    public void queryParamRegexNotRewrittenAsPrefix() {
+        Match match = MatchOptimizer.match(MatchType.QUERY_PARAMS, MatchMode.REGEX, "abc.*", "q", false);
+        assertEquals(MatchMode.REGEX, MatchOptimizer.optimize(List.of(match)).get(0).mode());
+    }
+
+    @Test
+    public void duplicatesAndSubsumedRemoved() {
+        List<Match> matches = MatchOptimizer.optimize(List.of(
+                uri(MatchMode.PREFIX, "/api/v1/orders"),
+                uri(MatchMode.EXACT, "/api/v1/customers"),
+                uri(MatchMode.PREFIX, "/api/"),
+                uri(MatchMode.PREFIX, "/api/"),
+                uri(MatchMode.EXACT, "/health")));
+        assertEquals(2, matches.size());
+        assertEquals("/health", matches.get(0).value());
+        assertEquals("/api/", matches.get(1).value());
+    }
+
+    @Test
+    public void differentHeadersNotSubsumed() {
+        List<Match> matches = MatchOptimizer.optimize(List.of(
+                MatchOptimizer.match(MatchType.HEADERS, MatchMode.PREFIX, "a", "x-user", false),
+                MatchOptimizer.match(MatchType.HEADERS, MatchMode.EXACT, "abc", "x-tenant", false)));
+        assertEquals(2, matches.size());
+    }
+
+    @Test
+    public void cheapMatchesFirst() {
+        List<Match> matches = MatchOptimizer.optimize(List.of(
+                uri(MatchMode.REGEX, "/a[0-9]+"),
+                uri(MatchMode.PREFIX, "/b/"),
+                uri(MatchMode.EXACT, "/c")));
+        assertEquals(MatchMode.EXACT, matches.get(0).mode());
+        assertEquals(MatchMode.PREFIX, matches.get(1).mode());
+        assertEquals(MatchMode.REGEX, matches.get(2).mode());
+    }
+
+    @Test
+    public void possessiveQuantifierReported(CapturedOutput output) {
+        MatchOptimizer.optimize(List.of(uri(MatchMode.REGEX, "/a++")));
+        assertTrue(output.getAll().contains("not supported by RE2"));
+    }
+
+    @Test
+    public void escapedCharacterNotTakenForPossessiveQuantifier(CapturedOutput output) {
+        List<Match> matches = MatchOptimizer.optimize(List.of(uri(MatchMode.REGEX, "/a\\++")));
+        assertEquals(MatchMode.REGEX, matches.get(0).mode());
+        assertFalse(output.getAll().contains("not supported by RE2"));
+    }
+
+    private Match uri(MatchMode mode, String value) {
+        return MatchOptimizer.match(MatchType.URI, mode, value, "", false);
+    }
+
+}
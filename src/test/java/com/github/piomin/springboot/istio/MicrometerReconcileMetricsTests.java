@@ -0,0 +1,50 @@
+package com.github.piomin.springboot.istio;
+
+import com.github.piomin.springboot.istio.metrics.MicrometerReconcileMetrics;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MicrometerReconcileMetricsTests {
+
+    @Test
+    public void recordCall() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerReconcileMetrics metrics = new MicrometerReconcileMetrics(registry);
+        assertEquals("ok", metrics.record("VirtualService", "get", () -> "ok"));
+        assertEquals(1, registry.get("istio.reconcile.api.calls")
+                .tag("kind", "VirtualService").tag("operation", "get").timer().count());
+    }
+
+    @Test
+    public void recordError() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerReconcileMetrics metrics = new MicrometerReconcileMetrics(registry);
+        assertThrows(KubernetesClientException.class, () -> metrics.record("Gateway", "update", () -> {
+            throw new KubernetesClientException("error", 500, null);
+        }));
+        assertEquals(1.0, registry.get("istio.reconcile.errors").tag("kind", "Gateway").counter().count());
+    }
+
+    @Test
+    public void recordSkipAndConflict() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerReconcileMetrics metrics = new MicrometerReconcileMetrics(registry);
+        metrics.skipped("DestinationRule", 1000);
+        metrics.conflict("DestinationRule");
+        assertEquals(1.0, registry.get("istio.reconcile.skips").counter().count());
+        assertEquals(1.0, registry.get("istio.reconcile.conflicts").counter().count());
+        assertEquals(1, registry.get("istio.reconcile.api.calls").tag("operation", "skip").timer().count());
+    }
+
+    @Test
+    public void lastSuccessAge() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerReconcileMetrics metrics = new MicrometerReconcileMetrics(registry);
+        assertTrue(Double.isNaN(registry.get("istio.reconcile.last.success.age").gauge().value()));
+        metrics.reconciled();
+        assertTrue(registry.get("istio.reconcile.last.success.age").gauge().value() >= 0);
+    }
+}
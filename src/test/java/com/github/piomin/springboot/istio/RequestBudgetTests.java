@@ -0,0 +1,51 @@
+package com.github.piomin.springboot.istio;
+
+import com.github.piomin.springboot.istio.metrics.MicrometerReconcileMetrics;
+import com.github.piomin.springboot.istio.processor.RequestBudget;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestBudgetTests {
+
+    @Test
+    public void noLimit() {
+        RequestBudget budget = new RequestBudget(0, 1, 0);
+        for (int i = 0; i < 100; i++)
+            budget.acquire();
+        assertEquals(0, budget.getTotalWaitTime());
+    }
+
+    @Test
+    public void burstWithoutWait() {
+        RequestBudget budget = new RequestBudget(1, 5, 0);
+        for (int i = 0; i < 5; i++)
+            budget.acquire();
+        assertEquals(0, budget.getTotalWaitTime());
+    }
+
+    @Test
+    public void waitAfterBurst() {
+        RequestBudget budget = new RequestBudget(20, 2, 0);
+        for (int i = 0; i < 4; i++)
+            budget.acquire();
+        assertTrue(budget.getTotalWaitTime() > 0);
+        assertTrue(budget.getMaxWaitTime() <= 100);
+    }
+
+    @Test
+    public void waitRecordedInMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RequestBudget budget = new RequestBudget(20, 1, 0, new MicrometerReconcileMetrics(registry));
+        budget.acquire();
+        assertNull(registry.find("istio.client.throttle.wait").timer());
+        budget.acquire();
+        Timer timer = registry.get("istio.client.throttle.wait").timer();
+        assertEquals(1, timer.count());
+        assertTrue(timer.totalTime(TimeUnit.MILLISECONDS) > 0);
+    }
+}
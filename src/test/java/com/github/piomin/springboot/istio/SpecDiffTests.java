@@ -0,0 +1,43 @@
+package com.github.piomin.springboot.istio;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.piomin.springboot.istio.processor.SpecDiff;
+import io.fabric8.istio.api.api.networking.v1alpha3.HTTPRoute;
+import io.fabric8.istio.api.api.networking.v1alpha3.HTTPRouteBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpecDiffTests {
+
+    @Test
+    public void noChanges() {
+        assertTrue(SpecDiff.diff(createRoute("6s"), createRoute("6s")).isEmpty());
+    }
+
+    @Test
+    public void changedField() {
+        List<String> changes = SpecDiff.diff(createRoute("6s"), createRoute("3s"));
+        assertEquals(List.of("timeout: \"6s\" -> \"3s\""), changes);
+    }
+
+    @Test
+    public void addedAndRemovedField() {
+        assertEquals(List.of("+ timeout: \"3s\""), SpecDiff.diff(createRoute(null), createRoute("3s")));
+        assertEquals(List.of("- timeout: \"3s\""), SpecDiff.diff(createRoute("3s"), createRoute(null)));
+    }
+
+    @Test
+    public void snapshotIsolatedFromChanges() {
+        HTTPRoute route = createRoute("6s");
+        JsonNode before = SpecDiff.snapshot(route);
+        route.setTimeout("3s");
+        assertEquals(1, SpecDiff.diff(before, route).size());
+    }
+
+    private HTTPRoute createRoute(String timeout) {
+        return new HTTPRouteBuilder().withName("test1").withTimeout(timeout).build();
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.piomin.springboot.istio;
+
+import com.github.piomin.springboot.istio.processor.SpecHash;
+import io.fabric8.istio.api.api.networking.v1alpha3.DestinationRuleSpec;
+import io.fabric8.istio.api.api.networking.v1alpha3.DestinationRuleSpecBuilder;
+import io.fabric8.istio.api.api.networking.v1alpha3.Subset;
+import io.fabric8.istio.api.api.networking.v1alpha3.SubsetBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpecHashTests {
+
+    @Test
+    public void sameSpecSameHash() {
+        assertEquals(SpecHash.of(createSpec("v1", "v2")), SpecHash.of(createSpec("v1", "v2")));
+    }
+
+    @Test
+    public void subsetOrderIgnored() {
+        assertEquals(SpecHash.of(createSpec("v1", "v2")), SpecHash.of(createSpec("v2", "v1")));
+    }
+
+    @Test
+    public void labelOrderIgnored() {
+        Map<String, String> labels1 = new LinkedHashMap<>();
+        labels1.put("version", "v1");
+        labels1.put("app", "test1");
+        Map<String, String> labels2 = new LinkedHashMap<>();
+        labels2.put("app", "test1");
+        labels2.put("version", "v1");
+        Subset s1 = new SubsetBuilder().withName("v1").withLabels(labels1).build();
+        Subset s2 = new SubsetBuilder().withName("v1").withLabels(labels2).build();
+        assertEquals(SpecHash.of(s1), SpecHash.of(s2));
+    }
+
+    @Test
+    public void differentSpecDifferentHash() {
+        assertNotEquals(SpecHash.of(createSpec("v1")), SpecHash.of(createSpec("v1", "v2")));
+    }
+
+    private DestinationRuleSpec createSpec(String... versions) {
+        DestinationRuleSpecBuilder builder = new DestinationRuleSpecBuilder().withHost("test1");
+        for (String version : versions)
+            builder.addToSubsets(new SubsetBuilder().withName(version).addToLabels("version", version).build());
+        return builder.build();
+    }
+}
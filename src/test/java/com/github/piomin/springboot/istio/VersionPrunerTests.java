@@ -0,0 +1,117 @@
+package com.github.piomin.springboot.istio;
+
+import com.github.piomin.springboot.istio.processor.VersionPruner;
+import com.github.piomin.springboot.istio.service.IstioService;
+import io.fabric8.istio.api.api.networking.v1alpha3.HTTPRouteDestination;
+import io.fabric8.istio.api.api.networking.v1alpha3.HTTPRouteDestinationBuilder;
+import io.fabric8.istio.api.networking.v1beta1.DestinationRule;
+import io.fabric8.istio.api.networking.v1beta1.DestinationRuleBuilder;
+import io.fabric8.istio.api.networking.v1beta1.VirtualService;
+import io.fabric8.istio.api.networking.v1beta1.VirtualServiceBuilder;
+import io.fabric8.istio.client.DefaultIstioClient;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VersionPrunerTests {
+
+    private static final long GRACE_PERIOD = Duration.ofHours(1).toMillis();
+
+    private final VersionPruner pruner = new VersionPruner(new DefaultIstioClient(), new IstioService(), GRACE_PERIOD);
+
+    @Test
+    public void scheduledCheck() throws InterruptedException {
+        CountDownLatch reconciled = new CountDownLatch(2);
+        try (VersionPruner scheduled = new VersionPruner(new DefaultIstioClient(), new IstioService(), GRACE_PERIOD, 20)) {
+            scheduled.start(reconciled::countDown);
+            assertTrue(reconciled.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void staleSubsetRemovedAfterGracePeriod() {
+        DestinationRule dr = destinationRule("v1", "v2", "v3");
+        List<Map<String, String>> pods = List.of(Map.of("app", "test", "version", "v2"));
+        Instant now = Instant.now();
+        Set<String> pruned = new HashSet<>();
+
+        assertTrue(pruner.prune(dr, "v3", pods, now, pruned));
+        assertTrue(pruned.isEmpty());
+        assertEquals(3, dr.getSpec().getSubsets().size());
+        assertNotNull(dr.getMetadata().getAnnotations().get(VersionPruner.STALE_ANNOTATION));
+
+        assertFalse(pruner.prune(dr, "v3", pods, now.plusSeconds(60), pruned));
+
+        assertTrue(pruner.prune(dr, "v3", pods, now.plusMillis(GRACE_PERIOD), pruned));
+        assertEquals(Set.of("v1"), pruned);
+        assertEquals(List.of("v2", "v3"), dr.getSpec().getSubsets().stream().map(s -> s.getName()).toList());
+        assertNull(dr.getMetadata().getAnnotations().get(VersionPruner.STALE_ANNOTATION));
+    }
+
+    @Test
+    public void subsetRunningAgainUnmarked() {
+        DestinationRule dr = destinationRule("v1", "v2");
+        Set<String> pruned = new HashSet<>();
+        pruner.prune(dr, "v2", List.of(), Instant.now(), pruned);
+        assertNotNull(dr.getMetadata().getAnnotations().get(VersionPruner.STALE_ANNOTATION));
+        assertTrue(pruner.prune(dr, "v2", List.of(Map.of("version", "v1")), Instant.now(), pruned));
+        assertNull(dr.getMetadata().getAnnotations().get(VersionPruner.STALE_ANNOTATION));
+        assertTrue(pruned.isEmpty());
+    }
+
+    @Test
+    public void routesPrunedAndRebalanced() {
+        VirtualService vs = new VirtualServiceBuilder()
+                .withNewMetadata().withName("test-route").endMetadata()
+                .withNewSpec()
+                .addNewHttp()
+                .addToRoute(destination("v1", 50), destination("v2", 20), destination("v3", 30))
+                .endHttp()
+                .addNewHttp()
+                .addToRoute(destination("v1", null))
+                .endHttp()
+                .endSpec()
+                .build();
+        VersionPruner.pruneRoutes(vs, Set.of("v1"));
+        assertEquals(1, vs.getSpec().getHttp().size());
+        List<HTTPRouteDestination> route = vs.getSpec().getHttp().get(0).getRoute();
+        assertEquals(2, route.size());
+        assertEquals(40, route.get(0).getWeight());
+        assertEquals(60, route.get(1).getWeight());
+    }
+
+    @Test
+    public void rebalanceRemainder() {
+        List<HTTPRouteDestination> route = new ArrayList<>(List.of(
+                destination("v1", 10), destination("v2", 10), destination("v3", 10)));
+        VersionPruner.rebalance(route);
+        assertEquals(100, route.stream().mapToInt(HTTPRouteDestination::getWeight).sum());
+    }
+
+    private DestinationRule destinationRule(String... versions) {
+        DestinationRuleBuilder builder = new DestinationRuleBuilder()
+                .withNewMetadata().withName("test-destination").endMetadata()
+                .withNewSpec().withHost("test").endSpec();
+        for (String version : versions)
+            builder.editSpec().addNewSubset().withName(version).addToLabels("version", version).endSubset().endSpec();
+        return builder.build();
+    }
+
+    private HTTPRouteDestination destination(String subset, Integer weight) {
+        return new HTTPRouteDestinationBuilder()
+                .withNewDestination().withHost("test").withSubset(subset).endDestination()
+                .withWeight(weight)
+                .build();
+    }
+
+}